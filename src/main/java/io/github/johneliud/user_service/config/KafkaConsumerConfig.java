@@ -1,20 +1,28 @@
 package io.github.johneliud.user_service.config;
 
+import io.github.johneliud.user_service.dto.OrderPlacedEvent;
+import io.github.johneliud.user_service.services.OrderEventRecoveryService;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.annotation.EnableKafkaRetryTopic;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.DefaultErrorHandler;
-import org.springframework.util.backoff.FixedBackOff;
+import org.springframework.kafka.support.serializer.ErrorHandlingDeserializer;
+import org.springframework.util.backoff.ExponentialBackOff;
+import tools.jackson.databind.ObjectMapper;
 
 import java.util.HashMap;
 import java.util.Map;
 
 @Configuration
+@EnableKafkaRetryTopic
 public class KafkaConsumerConfig {
 
     @Value("${spring.kafka.bootstrap-servers:localhost:9092}")
@@ -23,23 +31,77 @@ public class KafkaConsumerConfig {
     @Value("${spring.kafka.consumer.group-id:user-service}")
     private String groupId;
 
+    @Value("${spring.kafka.consumer.max-poll-records:500}")
+    private int maxPollRecords;
+
+    @Value("${spring.kafka.listener.concurrency:1}")
+    private int concurrency;
+
     @Bean
     public ConsumerFactory<String, String> consumerFactory() {
+        Map<String, Object> props = consumerProps();
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        return new DefaultKafkaConsumerFactory<>(props);
+    }
+
+    private Map<String, Object> consumerProps() {
         Map<String, Object> props = new HashMap<>();
         props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
-        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        return new DefaultKafkaConsumerFactory<>(props);
+        props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        return props;
+    }
+
+    @Bean
+    public ConsumerFactory<String, OrderPlacedEvent> orderPlacedConsumerFactory(ObjectMapper objectMapper) {
+        return new DefaultKafkaConsumerFactory<>(consumerProps(),
+                new StringDeserializer(),
+                new ErrorHandlingDeserializer<>(new OrderPlacedEventDeserializer(objectMapper)));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, OrderPlacedEvent> kafkaListenerContainerFactory(
+            ConsumerFactory<String, OrderPlacedEvent> orderPlacedConsumerFactory,
+            KafkaTemplate<String, Object> deadLetterKafkaTemplate,
+            OrderEventRecoveryService orderEventRecoveryService) {
+        ConcurrentKafkaListenerContainerFactory<String, OrderPlacedEvent> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(orderPlacedConsumerFactory);
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        // Offsets are committed only after the stats transaction for the whole batch has committed
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        // The listener forwards failed batches itself; this only catches failures to forward or park
+        // them. After two quick in-memory retries every record is handed to the retry topic, or parked
+        ExponentialBackOff backOff = new ExponentialBackOff(500L, 2.0);
+        backOff.setMaxAttempts(2);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(
+                new ParkingDeadLetterRecoverer(deadLetterKafkaTemplate, orderEventRecoveryService), backOff));
+        return factory;
     }
 
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory() {
+    public ConcurrentKafkaListenerContainerFactory<String, String> retryKafkaListenerContainerFactory() {
         ConcurrentKafkaListenerContainerFactory<String, String> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory());
-        factory.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(1000L, 3L)));
+        factory.setConcurrency(concurrency);
+        return factory;
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> invalidationKafkaListenerContainerFactory() {
+        Map<String, Object> props = consumerProps();
+        // Invalidations only matter for what is cached now, so a fresh instance skips the backlog
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, true);
+        ConcurrentKafkaListenerContainerFactory<String, String> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(props,
+                new StringDeserializer(), new StringDeserializer()));
         return factory;
     }
 }
@@ -0,0 +1,34 @@
+package io.github.johneliud.user_service.config;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+
+/**
+ * Records the size of every command reply as {@code mongodb.reply.bytes}, tagged by command,
+ * to compare how much data each read shape pulls over the wire.
+ */
+public class MongoReplySizeListener implements CommandListener {
+    private final MeterRegistry meterRegistry;
+
+    public MongoReplySizeListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        BsonDocument response = event.getResponse();
+        // The driver hands listeners the undecoded reply, so its size is just the buffer length
+        if (!(response instanceof RawBsonDocument raw)) {
+            return;
+        }
+        DistributionSummary.builder("mongodb.reply.bytes")
+                .baseUnit("bytes")
+                .tag("command", event.getCommandName())
+                .register(meterRegistry)
+                .record(raw.getByteBuffer().remaining());
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.johneliud.user_service.config;
+
+import io.github.johneliud.user_service.dto.OrderPlacedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectReader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes order-placed records straight from the fetched bytes with a reader bound once to
+ * {@link OrderPlacedEvent}, skipping the intermediate String. Wrap it in an
+ * {@code ErrorHandlingDeserializer} so failures reach the listener as
+ * {@code DeserializationException}s instead of stalling the consumer.
+ */
+public class OrderPlacedEventDeserializer implements Deserializer<OrderPlacedEvent> {
+    private final ObjectReader reader;
+
+    public OrderPlacedEventDeserializer(ObjectMapper objectMapper) {
+        this.reader = objectMapper.readerFor(OrderPlacedEvent.class);
+    }
+
+    @Override
+    public OrderPlacedEvent deserialize(String topic, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        return read(topic, data, 0, data.length);
+    }
+
+    @Override
+    public OrderPlacedEvent deserialize(String topic, Headers headers, ByteBuffer data) {
+        if (data == null) {
+            return null;
+        }
+        if (data.hasArray()) {
+            return read(topic, data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return read(topic, copy, 0, copy.length);
+    }
+
+    private OrderPlacedEvent read(String topic, byte[] data, int offset, int length) {
+        try {
+            return reader.readValue(data, offset, length);
+        } catch (JacksonException e) {
+            throw new SerializationException("Failed to deserialize order-placed event from " + topic, e);
+        }
+    }
+}
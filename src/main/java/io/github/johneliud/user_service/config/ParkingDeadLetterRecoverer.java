@@ -0,0 +1,45 @@
+package io.github.johneliud.user_service.config;
+
+import io.github.johneliud.user_service.services.OrderEventRecoveryService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+
+/**
+ * Recovers order-placed records the batch listener could not apply, forward or park: each is
+ * published to the retry topic, whose listener retries with back-off and parks what it cannot
+ * apply. If that publish fails, the record is parked in Mongo directly. If parking fails too, the
+ * exception propagates and the error handler seeks back, so the batch is redelivered, never
+ * skipped.
+ */
+@Slf4j
+public class ParkingDeadLetterRecoverer implements ConsumerRecordRecoverer {
+    private final ConsumerRecordRecoverer publisher;
+    private final OrderEventRecoveryService orderEventRecoveryService;
+
+    public ParkingDeadLetterRecoverer(KafkaOperations<String, Object> kafkaTemplate,
+                                      OrderEventRecoveryService orderEventRecoveryService) {
+        this(new DeadLetterPublishingRecoverer(kafkaTemplate,
+                        (record, exception) -> new TopicPartition(OrderEventRecoveryService.ORDER_PLACED_RETRY_TOPIC, -1)),
+                orderEventRecoveryService);
+    }
+
+    ParkingDeadLetterRecoverer(ConsumerRecordRecoverer publisher, OrderEventRecoveryService orderEventRecoveryService) {
+        this.publisher = publisher;
+        this.orderEventRecoveryService = orderEventRecoveryService;
+    }
+
+    @Override
+    public void accept(ConsumerRecord<?, ?> record, Exception exception) {
+        try {
+            publisher.accept(record, exception);
+        } catch (RuntimeException e) {
+            log.warn("Failed to publish order event to {}, parking it: {}",
+                    OrderEventRecoveryService.ORDER_PLACED_RETRY_TOPIC, e.getMessage());
+            orderEventRecoveryService.park(record, "Recovery after failed batch: " + exception.getMessage());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.johneliud.user_service.controllers;
+
+import io.github.johneliud.user_service.dto.ApiResponse;
+import io.github.johneliud.user_service.dto.ReplayResponse;
+import io.github.johneliud.user_service.exception.ForbiddenException;
+import io.github.johneliud.user_service.exception.UnauthorizedException;
+import io.github.johneliud.user_service.models.Role;
+import io.github.johneliud.user_service.services.OrderEventRecoveryService;
+import io.github.johneliud.user_service.services.UserImportService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/users/admin")
+@RequiredArgsConstructor
+@Slf4j
+public class AdminController {
+    private static final int MAX_REPLAY_BATCH = 5000;
+
+    private static final String NDJSON_VALUE = "application/x-ndjson";
+
+    private final OrderEventRecoveryService orderEventRecoveryService;
+    private final UserImportService userImportService;
+
+    @PostMapping("/parked-events/replay")
+    public ResponseEntity<ApiResponse<ReplayResponse>> replayParkedEvents(
+            @RequestHeader(value = "X-User-Id", required = false) String userId,
+            @RequestHeader(value = "X-User-Role", required = false) String role,
+            @RequestParam(defaultValue = "500") int limit) {
+        requireAdmin(userId, role);
+        if (limit < 1 || limit > MAX_REPLAY_BATCH) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_REPLAY_BATCH);
+        }
+
+        log.info("POST /api/users/admin/parked-events/replay - request by user: {} with limit: {}", userId, limit);
+        ReplayResponse response = orderEventRecoveryService.replayParked(limit);
+        return ResponseEntity.ok(new ApiResponse<>(true, "Parked events replayed successfully", response));
+    }
+
+    /**
+     * Streams one NDJSON result line per input row as batches are inserted, so progress is
+     * visible and nothing is held in memory across batches.
+     */
+    @PostMapping(value = "/import", consumes = {NDJSON_VALUE, "text/csv"}, produces = NDJSON_VALUE)
+    public void importUsers(
+            @RequestHeader(value = "X-User-Id", required = false) String userId,
+            @RequestHeader(value = "X-User-Role", required = false) String role,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        requireAdmin(userId, role);
+
+        UserImportService.Format format = contentType.isCompatibleWith(MediaType.parseMediaType("text/csv"))
+                ? UserImportService.Format.CSV
+                : UserImportService.Format.NDJSON;
+        log.info("POST /api/users/admin/import - {} import started by user: {}", format, userId);
+
+        response.setContentType(NDJSON_VALUE);
+        userImportService.importUsers(request.getInputStream(), format, response.getOutputStream());
+    }
+
+    private void requireAdmin(String userId, String role) {
+        if (userId == null || role == null) throw new UnauthorizedException("Authentication required");
+        if (!Role.ADMIN.name().equals(role)) throw new ForbiddenException("Access denied");
+    }
+}
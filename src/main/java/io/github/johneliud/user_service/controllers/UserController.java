@@ -4,29 +4,40 @@ import io.github.johneliud.user_service.dto.*;
 import io.github.johneliud.user_service.exception.ForbiddenException;
 import io.github.johneliud.user_service.exception.UnauthorizedException;
 import io.github.johneliud.user_service.services.AuthService;
+import io.github.johneliud.user_service.services.FileStorageService;
 import io.github.johneliud.user_service.services.UserService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/users")
 @RequiredArgsConstructor
 @Slf4j
 public class UserController {
+    // Tomcat's sendfile request attributes; set on a response without a body, the connector writes the file itself
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    // Same threshold as Tomcat's DefaultServlet; below it a plain write is cheaper than the sendfile handoff
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
     private final UserService userService;
     private final AuthService authService;
+    private final FileStorageService fileStorageService;
 
     @PostMapping("/register")
     public ResponseEntity<ApiResponse<UserResponse>> register(
@@ -43,10 +54,11 @@ public class UserController {
     }
 
     @PostMapping("/login")
-    public ResponseEntity<ApiResponse<LoginResponse>> login(@Valid @RequestBody LoginRequest request) {
+    public ResponseEntity<ApiResponse<LoginResponse>> login(@Valid @RequestBody LoginRequest request,
+                                                            HttpServletRequest httpRequest) {
         log.info("POST /api/users/login - Login request received for email: {}", request.getEmail());
         
-        LoginResponse loginResponse = authService.login(request);
+        LoginResponse loginResponse = authService.login(request, httpRequest.getRemoteAddr());
         
         log.info("POST /api/users/login - Login successful for user: {}", loginResponse.getUser().getId());
         return ResponseEntity.ok(new ApiResponse<>(true, "Login successful", loginResponse));
@@ -73,6 +85,16 @@ public class UserController {
         return ResponseEntity.ok(new ApiResponse<>(true, "User retrieved successfully", userResponse));
     }
 
+    @PostMapping("/batch")
+    public ResponseEntity<ApiResponse<BatchUsersResponse>> getUsersByIds(@Valid @RequestBody BatchUsersRequest request) {
+        log.info("POST /api/users/batch - Batch lookup of {} ids", request.getIds().size());
+
+        BatchUsersResponse response = userService.getProfiles(request.getIds());
+
+        log.info("POST /api/users/batch - Found {} users, {} missing", response.getUsers().size(), response.getMissing().size());
+        return ResponseEntity.ok(new ApiResponse<>(true, "Users retrieved successfully", response));
+    }
+
     @PutMapping("/profile")
     public ResponseEntity<ApiResponse<UserResponse>> updateProfile(
             @RequestHeader("X-User-Id") String userId,
@@ -107,49 +129,69 @@ public class UserController {
     @GetMapping("/profile/stats")
     public ResponseEntity<ApiResponse<UserStatsResponse>> getMyStats(
             @RequestHeader(value = "X-User-Id", required = false) String userId,
-            @RequestHeader(value = "X-User-Role", required = false) String role) {
+            @RequestHeader(value = "X-User-Role", required = false) String role,
+            @Valid @ModelAttribute StatsPageRequest page) {
         if (userId == null || role == null) throw new UnauthorizedException("Authentication required");
         if (!"CLIENT".equals(role)) throw new ForbiddenException("Access denied");
         log.info("GET /api/users/profile/stats - request for user: {}", userId);
-        return ResponseEntity.ok(new ApiResponse<>(true, "Stats retrieved successfully", userService.getUserStats(userId)));
+        return ResponseEntity.ok(new ApiResponse<>(true, "Stats retrieved successfully", userService.getUserStats(userId, page)));
     }
 
     @GetMapping("/profile/seller-stats")
     public ResponseEntity<ApiResponse<SellerStatsResponse>> getMySellerStats(
             @RequestHeader(value = "X-User-Id", required = false) String userId,
-            @RequestHeader(value = "X-User-Role", required = false) String role) {
+            @RequestHeader(value = "X-User-Role", required = false) String role,
+            @Valid @ModelAttribute StatsPageRequest page) {
         if (userId == null || role == null) throw new UnauthorizedException("Authentication required");
         if (!"SELLER".equals(role)) throw new ForbiddenException("Access denied");
         log.info("GET /api/users/profile/seller-stats - request for user: {}", userId);
-        return ResponseEntity.ok(new ApiResponse<>(true, "Seller stats retrieved successfully", userService.getSellerStats(userId)));
+        return ResponseEntity.ok(new ApiResponse<>(true, "Seller stats retrieved successfully", userService.getSellerStats(userId, page)));
     }
 
+    /**
+     * Serves avatars, or with {@code size} their nearest pre-rendered thumbnail, with the content
+     * hash as ETag, so revalidation returns {@code 304}. Range
+     * requests are answered from the store's {@link Resource}. Whole files on local disk are handed
+     * to Tomcat's sendfile when the connector supports it, so the bytes never pass through the JVM heap.
+     */
     @GetMapping("/avatars/{filename}")
-    public ResponseEntity<Resource> getAvatar(@PathVariable String filename) {
-        try {
-            Path uploadPath = Paths.get("uploads/avatars").toAbsolutePath().normalize();
-            Path filePath = uploadPath.resolve(filename).normalize();
-
-            if (!filePath.startsWith(uploadPath)) {
-                return ResponseEntity.badRequest().build();
-            }
-
-            Resource resource = new UrlResource(filePath.toUri());
-
-            if (!resource.exists()) {
-                return ResponseEntity.notFound().build();
-            }
-            
-            String contentType = determineContentType(filename);
-            
-            return ResponseEntity.ok()
-                .contentType(MediaType.parseMediaType(contentType))
-                .header(HttpHeaders.CACHE_CONTROL, "max-age=31536000")
-                .body(resource);
-        } catch (Exception e) {
-            log.error("Error retrieving avatar: {}", filename, e);
-            return ResponseEntity.internalServerError().build();
+    public ResponseEntity<Resource> getAvatar(@PathVariable String filename,
+                                              @RequestParam(required = false) Integer size,
+                                              ServletWebRequest webRequest) {
+        Optional<FileStorageService.StoredAvatar> found = fileStorageService.findAvatar(filename, size);
+        if (found.isEmpty()) {
+            return ResponseEntity.notFound().build();
         }
+
+        FileStorageService.StoredAvatar avatar = found.get();
+        if (webRequest.checkNotModified(avatar.etag(), avatar.lastModified().toEpochMilli())) {
+            return null;
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(determineContentType(avatar.filename())))
+            // A stand-in for a thumbnail still rendering must be revalidated, or it would stick for a year
+            .header(HttpHeaders.CACHE_CONTROL, avatar.provisional() ? "no-cache" : "max-age=31536000")
+            .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+            .eTag(avatar.etag())
+            .lastModified(avatar.lastModified());
+
+        HttpServletRequest request = webRequest.getRequest();
+        if (canSendfile(request, avatar)) {
+            request.setAttribute(SENDFILE_FILENAME, avatar.localPath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, avatar.contentLength());
+            return response.contentLength(avatar.contentLength()).build();
+        }
+        return response.body(avatar.resource());
+    }
+
+    private boolean canSendfile(HttpServletRequest request, FileStorageService.StoredAvatar avatar) {
+        return avatar.localPath() != null
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+                && HttpMethod.GET.matches(request.getMethod())
+                && request.getHeader(HttpHeaders.RANGE) == null
+                && avatar.contentLength() >= SENDFILE_MIN_SIZE;
     }
 
     private String determineContentType(String filename) {
@@ -0,0 +1,15 @@
+package io.github.johneliud.user_service.dto;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchUsersRequest {
+    @NotEmpty(message = "ids must not be empty")
+    @Size(max = 5000, message = "At most 5000 ids can be requested at once")
+    private List<@NotBlank(message = "ids must not contain blank values") String> ids;
+}
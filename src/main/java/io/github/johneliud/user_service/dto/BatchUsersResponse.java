@@ -0,0 +1,15 @@
+package io.github.johneliud.user_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchUsersResponse {
+    private List<UserResponse> users;
+    private List<String> missing;
+}
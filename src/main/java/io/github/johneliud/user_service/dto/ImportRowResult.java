@@ -0,0 +1,18 @@
+package io.github.johneliud.user_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportRowResult {
+    public enum Status { CREATED, INVALID, DUPLICATE, FAILED }
+
+    private long line;
+    private String email;
+    private Status status;
+    private String userId;
+    private String error;
+}
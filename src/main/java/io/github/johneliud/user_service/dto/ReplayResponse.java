@@ -0,0 +1,13 @@
+package io.github.johneliud.user_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplayResponse {
+    private int replayed;
+    private long remaining;
+}
@@ -14,4 +14,5 @@ import java.util.List;
 public class SellerStatsResponse {
     private BigDecimal totalRevenue;
     private List<ProductStat> topProducts;
+    private String nextCursor;
 }
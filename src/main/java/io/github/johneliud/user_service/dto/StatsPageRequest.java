@@ -0,0 +1,21 @@
+package io.github.johneliud.user_service.dto;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import lombok.Data;
+
+@Data
+public class StatsPageRequest {
+    @Min(value = 1, message = "Limit must be at least 1")
+    @Max(value = 100, message = "Limit must be at most 100")
+    private int limit = 10;
+
+    @Min(value = 0, message = "Offset must not be negative")
+    private int offset = 0;
+
+    @Pattern(regexp = "(?i)quantity|amount", message = "sortBy must be one of: quantity, amount")
+    private String sortBy;
+
+    private String cursor;
+}
@@ -14,4 +14,5 @@ import java.util.List;
 public class UserStatsResponse {
     private BigDecimal totalSpent;
     private List<ProductStat> topProducts;
+    private String nextCursor;
 }
@@ -0,0 +1,7 @@
+package io.github.johneliud.user_service.exception;
+
+public class ServiceUnavailableException extends RuntimeException {
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
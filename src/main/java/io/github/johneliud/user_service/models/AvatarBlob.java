@@ -0,0 +1,31 @@
+package io.github.johneliud.user_service.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Reference count for one content-addressed avatar file, keyed by its filename
+ * ({@code <sha256>.<ext>}). A blob whose count reaches zero is removed by the sweeper once it
+ * has stayed unreferenced for the grace period.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "avatar_blobs")
+public class AvatarBlob {
+    @Id
+    private String id;
+
+    private long refs;
+
+    private long size;
+
+    @Indexed
+    private Instant updatedAt;
+}
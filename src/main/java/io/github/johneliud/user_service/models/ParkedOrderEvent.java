@@ -0,0 +1,30 @@
+package io.github.johneliud.user_service.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "parked_order_events")
+public class ParkedOrderEvent {
+    @Id
+    private String id;
+
+    private String key;
+
+    private String payload;
+
+    private String reason;
+
+    private String sourceTopic;
+
+    @Indexed
+    private Instant parkedAt;
+}
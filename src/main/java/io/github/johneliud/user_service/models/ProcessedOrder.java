@@ -0,0 +1,30 @@
+package io.github.johneliud.user_service.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "processed_orders")
+public class ProcessedOrder {
+    @Id
+    private String id;
+
+    private String orderId;
+
+    private String userId;
+
+    @Indexed(expireAfter = "7d")
+    private Instant processedAt;
+
+    public static String key(String orderId, String userId) {
+        return orderId + ":" + userId;
+    }
+}
@@ -0,0 +1,29 @@
+package io.github.johneliud.user_service.models;
+
+public enum ProductStatSort {
+    QUANTITY("totalQuantity", "topProductsByQuantity"),
+    AMOUNT("totalAmount", "topProductsByAmount");
+
+    private final String field;
+    private final String topProductsField;
+
+    ProductStatSort(String field, String topProductsField) {
+        this.field = field;
+        this.topProductsField = topProductsField;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public String getTopProductsField() {
+        return topProductsField;
+    }
+
+    public static ProductStatSort fromString(String value, ProductStatSort defaultSort) {
+        if (value == null || value.isBlank()) {
+            return defaultSort;
+        }
+        return ProductStatSort.valueOf(value.toUpperCase());
+    }
+}
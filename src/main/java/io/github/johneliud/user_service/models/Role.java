@@ -5,7 +5,9 @@ import com.fasterxml.jackson.annotation.JsonValue;
 
 public enum Role {
     CLIENT,
-    SELLER;
+    SELLER,
+    // Never self-registered; provisioned by AdminAccountInitializer
+    ADMIN;
 
     @JsonCreator
     public static Role fromString(String value) {
@@ -9,7 +9,6 @@ import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.List;
 
 @Data
@@ -39,5 +38,7 @@ public class User {
 
     private BigDecimal totalRevenue = BigDecimal.ZERO;
 
-    private List<ProductStat> productStats = new ArrayList<>();
-}
\ No newline at end of file
+    private List<ProductStat> topProductsByQuantity;
+
+    private List<ProductStat> topProductsByAmount;
+}
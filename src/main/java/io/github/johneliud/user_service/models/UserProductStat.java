@@ -0,0 +1,39 @@
+package io.github.johneliud.user_service.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.math.BigDecimal;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "user_product_stats")
+@CompoundIndexes({
+        @CompoundIndex(name = "user_product_idx", def = "{'userId': 1, 'productId': 1}", unique = true),
+        @CompoundIndex(name = "user_quantity_idx", def = "{'userId': 1, 'totalQuantity': -1, 'productId': 1}"),
+        @CompoundIndex(name = "user_amount_idx", def = "{'userId': 1, 'totalAmount': -1, 'productId': 1}")
+})
+public class UserProductStat {
+    @Id
+    private String id;
+
+    private String userId;
+
+    private String productId;
+
+    private String productName;
+
+    private int totalQuantity;
+
+    private BigDecimal totalAmount = BigDecimal.ZERO;
+
+    public ProductStat toProductStat() {
+        return new ProductStat(productId, productName, totalQuantity, totalAmount);
+    }
+}
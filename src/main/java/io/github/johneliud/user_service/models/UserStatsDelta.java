@@ -0,0 +1,43 @@
+package io.github.johneliud.user_service.models;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+@Data
+@NoArgsConstructor
+public class UserStatsDelta {
+    private String userId;
+
+    private BigDecimal spent = BigDecimal.ZERO;
+
+    private BigDecimal revenue = BigDecimal.ZERO;
+
+    // Set from the side of the order this user was on, since a zero-priced order leaves spent and revenue unchanged
+    private boolean buyer;
+
+    private boolean seller;
+
+    private Map<String, ProductStat> productStats = new LinkedHashMap<>();
+
+    private Set<String> orderIds = new LinkedHashSet<>();
+
+    public UserStatsDelta(String userId) {
+        this.userId = userId;
+    }
+
+    public void addProduct(String productId, String productName, int quantity, BigDecimal amount) {
+        ProductStat stat = productStats.get(productId);
+        if (stat == null) {
+            productStats.put(productId, new ProductStat(productId, productName, quantity, amount));
+        } else {
+            stat.setTotalQuantity(stat.getTotalQuantity() + quantity);
+            stat.setTotalAmount(stat.getTotalAmount().add(amount));
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package io.github.johneliud.user_service.repositories;
+
+import io.github.johneliud.user_service.models.AvatarBlob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AvatarBlobRepository extends MongoRepository<AvatarBlob, String>, AvatarBlobRepositoryCustom {
+}
@@ -0,0 +1,17 @@
+package io.github.johneliud.user_service.repositories;
+
+import io.github.johneliud.user_service.models.AvatarBlob;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface AvatarBlobRepositoryCustom {
+    void acquire(String id, long size);
+
+    Optional<AvatarBlob> release(String id);
+
+    List<AvatarBlob> findUnreferencedBefore(Instant cutoff, int limit);
+
+    boolean deleteIfUnreferenced(String id, Instant cutoff);
+}
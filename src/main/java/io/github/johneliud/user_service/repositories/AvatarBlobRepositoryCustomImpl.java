@@ -0,0 +1,53 @@
+package io.github.johneliud.user_service.repositories;
+
+import io.github.johneliud.user_service.models.AvatarBlob;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@RequiredArgsConstructor
+public class AvatarBlobRepositoryCustomImpl implements AvatarBlobRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void acquire(String id, long size) {
+        mongoTemplate.upsert(Query.query(Criteria.where("_id").is(id)),
+                new Update().inc("refs", 1).set("size", size).set("updatedAt", Instant.now()),
+                AvatarBlob.class);
+    }
+
+    /**
+     * Drops one reference and returns the updated blob, or empty if the file is not tracked
+     * (avatars stored before content addressing) or has no references left to drop.
+     */
+    @Override
+    public Optional<AvatarBlob> release(String id) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(id).and("refs").gt(0)),
+                new Update().inc("refs", -1).set("updatedAt", Instant.now()),
+                FindAndModifyOptions.options().returnNew(true),
+                AvatarBlob.class));
+    }
+
+    @Override
+    public List<AvatarBlob> findUnreferencedBefore(Instant cutoff, int limit) {
+        Query query = Query.query(Criteria.where("refs").lte(0).and("updatedAt").lt(cutoff))
+                .with(Sort.by("updatedAt"))
+                .limit(limit);
+        return mongoTemplate.find(query, AvatarBlob.class);
+    }
+
+    @Override
+    public boolean deleteIfUnreferenced(String id, Instant cutoff) {
+        Query query = Query.query(Criteria.where("_id").is(id).and("refs").lte(0).and("updatedAt").lt(cutoff));
+        return mongoTemplate.remove(query, AvatarBlob.class).getDeletedCount() > 0;
+    }
+}
@@ -0,0 +1,13 @@
+package io.github.johneliud.user_service.repositories;
+
+import io.github.johneliud.user_service.models.ParkedOrderEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ParkedOrderEventRepository extends MongoRepository<ParkedOrderEvent, String> {
+    List<ParkedOrderEvent> findAllByOrderByParkedAtAsc(Pageable pageable);
+}
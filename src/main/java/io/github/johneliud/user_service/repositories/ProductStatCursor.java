@@ -0,0 +1,38 @@
+package io.github.johneliud.user_service.repositories;
+
+import io.github.johneliud.user_service.models.ProductStatSort;
+import io.github.johneliud.user_service.models.ProductStat;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Keyset position in a user's product stats ordered by the sort field descending, then
+ * productId ascending. Encoded as an opaque URL-safe token.
+ */
+public record ProductStatCursor(ProductStatSort sort, Object value, String productId) {
+
+    public static ProductStatCursor after(ProductStat last, ProductStatSort sort) {
+        Object value = sort == ProductStatSort.QUANTITY ? last.getTotalQuantity() : last.getTotalAmount();
+        return new ProductStatCursor(sort, value, last.getProductId());
+    }
+
+    public static ProductStatCursor decode(String token, ProductStatSort sort) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 3);
+            if (parts.length != 3 || ProductStatSort.valueOf(parts[0]) != sort) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            Object value = sort == ProductStatSort.QUANTITY ? Integer.valueOf(parts[1]) : new BigDecimal(parts[1]);
+            return new ProductStatCursor(sort, value, parts[2]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    public String encode() {
+        String raw = sort.name() + "|" + value + "|" + productId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
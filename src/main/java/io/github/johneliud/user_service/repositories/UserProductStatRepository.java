@@ -0,0 +1,9 @@
+package io.github.johneliud.user_service.repositories;
+
+import io.github.johneliud.user_service.models.UserProductStat;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface UserProductStatRepository extends MongoRepository<UserProductStat, String>, UserProductStatRepositoryCustom {
+}
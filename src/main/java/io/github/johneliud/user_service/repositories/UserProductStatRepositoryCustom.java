@@ -0,0 +1,18 @@
+package io.github.johneliud.user_service.repositories;
+
+import io.github.johneliud.user_service.models.ProductStatSort;
+import io.github.johneliud.user_service.models.UserProductStat;
+import io.github.johneliud.user_service.models.UserStatsDelta;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface UserProductStatRepositoryCustom {
+    void incrementStats(Collection<UserStatsDelta> deltas);
+
+    List<UserProductStat> findUpdatedStats(Collection<UserStatsDelta> deltas);
+
+    List<UserProductStat> findTopStats(String userId, ProductStatSort sort, int offset, int limit);
+
+    List<UserProductStat> findTopStatsAfter(String userId, ProductStatCursor cursor, int limit);
+}
@@ -0,0 +1,105 @@
+package io.github.johneliud.user_service.repositories;
+
+import io.github.johneliud.user_service.models.ProductStat;
+import io.github.johneliud.user_service.models.ProductStatSort;
+import io.github.johneliud.user_service.models.User;
+import io.github.johneliud.user_service.models.UserProductStat;
+import io.github.johneliud.user_service.models.UserStatsDelta;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@RequiredArgsConstructor
+public class UserProductStatRepositoryCustomImpl implements UserProductStatRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Upserts one document per (userId, productId) with $inc, relying on the unique
+     * user_product_idx index so concurrent writers never create duplicates. Like the totals,
+     * stats are only kept for users that exist; orders naming an unknown buyer or seller
+     * write no rows for them.
+     */
+    @Override
+    public void incrementStats(Collection<UserStatsDelta> deltas) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserProductStat.class);
+        int operations = 0;
+
+        Set<String> existing = findExistingUserIds(deltas);
+        for (UserStatsDelta delta : deltas) {
+            if (!existing.contains(delta.getUserId())) {
+                continue;
+            }
+            for (ProductStat stat : delta.getProductStats().values()) {
+                bulk.upsert(
+                        Query.query(Criteria.where("userId").is(delta.getUserId())
+                                .and("productId").is(stat.getProductId())),
+                        new Update()
+                                .inc("totalQuantity", stat.getTotalQuantity())
+                                .inc("totalAmount", stat.getTotalAmount())
+                                .setOnInsert("productName", stat.getProductName()));
+                operations++;
+            }
+        }
+
+        if (operations > 0) {
+            bulk.execute();
+        }
+    }
+
+    private Set<String> findExistingUserIds(Collection<UserStatsDelta> deltas) {
+        List<String> userIds = deltas.stream().map(UserStatsDelta::getUserId).toList();
+        if (userIds.isEmpty()) {
+            return Set.of();
+        }
+        Query query = Query.query(Criteria.where("_id").in(userIds));
+        query.fields().include("_id");
+        return mongoTemplate.find(query, User.class).stream().map(User::getId).collect(Collectors.toSet());
+    }
+
+    @Override
+    public List<UserProductStat> findUpdatedStats(Collection<UserStatsDelta> deltas) {
+        Criteria[] perUser = deltas.stream()
+                .map(delta -> Criteria.where("userId").is(delta.getUserId())
+                        .and("productId").in(delta.getProductStats().keySet()))
+                .toArray(Criteria[]::new);
+        if (perUser.length == 0) {
+            return List.of();
+        }
+        return mongoTemplate.find(Query.query(new Criteria().orOperator(perUser)), UserProductStat.class);
+    }
+
+    @Override
+    public List<UserProductStat> findTopStats(String userId, ProductStatSort sort, int offset, int limit) {
+        Query query = Query.query(Criteria.where("userId").is(userId))
+                .with(orderBy(sort))
+                .skip(offset)
+                .limit(limit);
+        return mongoTemplate.find(query, UserProductStat.class);
+    }
+
+    @Override
+    public List<UserProductStat> findTopStatsAfter(String userId, ProductStatCursor cursor, int limit) {
+        String field = cursor.sort().getField();
+        Criteria after = new Criteria().orOperator(
+                Criteria.where(field).lt(cursor.value()),
+                Criteria.where(field).is(cursor.value()).and("productId").gt(cursor.productId()));
+
+        Query query = Query.query(Criteria.where("userId").is(userId).andOperator(after))
+                .with(orderBy(cursor.sort()))
+                .limit(limit);
+        return mongoTemplate.find(query, UserProductStat.class);
+    }
+
+    private Sort orderBy(ProductStatSort sort) {
+        return Sort.by(Sort.Order.desc(sort.getField()), Sort.Order.asc("productId"));
+    }
+}
@@ -2,12 +2,23 @@ package io.github.johneliud.user_service.repositories;
 
 import io.github.johneliud.user_service.models.User;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends MongoRepository<User, String> {
+public interface UserRepository extends MongoRepository<User, String>, UserRepositoryCustom {
     Optional<User> findByEmail(String email);
-    boolean existsByEmail(String email);
+
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'name': 1, 'email': 1, 'role': 1, 'avatar': 1 }")
+    Optional<User> findProfileById(String id);
+
+    @Query(value = "{ '_id': { '$in': ?0 } }", fields = "{ 'name': 1, 'email': 1, 'role': 1, 'avatar': 1 }")
+    List<User> findProfilesByIdIn(Collection<String> ids);
+
+    @Query(value = "{ 'email': ?0 }", fields = "{ 'name': 1, 'email': 1, 'password': 1, 'role': 1, 'avatar': 1 }")
+    Optional<User> findCredentialsByEmail(String email);
 }
@@ -0,0 +1,29 @@
+package io.github.johneliud.user_service.repositories;
+
+import io.github.johneliud.user_service.models.ProductStat;
+import io.github.johneliud.user_service.models.ProductStatSort;
+import io.github.johneliud.user_service.models.User;
+import io.github.johneliud.user_service.models.UserStatsDelta;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public interface UserRepositoryCustom {
+    void incrementTotals(Collection<UserStatsDelta> deltas);
+
+    void mergeTopProducts(Map<String, List<ProductStat>> updatedStats, ProductStatSort sort, int size);
+
+    List<String> findIdsWithoutTopProducts(Collection<String> userIds, ProductStatSort sort);
+
+    void initTopProducts(String userId, ProductStatSort sort, List<ProductStat> topProducts);
+
+    Optional<User> findStatsById(String userId, String totalField, ProductStatSort sort);
+
+    Optional<User> updateName(String userId, String name);
+
+    Optional<User> replaceAvatar(String userId, String avatar);
+
+    boolean replacePasswordHash(String userId, String expectedHash, String newHash);
+}
@@ -0,0 +1,135 @@
+package io.github.johneliud.user_service.repositories;
+
+import io.github.johneliud.user_service.models.ProductStat;
+import io.github.johneliud.user_service.models.ProductStatSort;
+import io.github.johneliud.user_service.models.User;
+import io.github.johneliud.user_service.models.UserStatsDelta;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@RequiredArgsConstructor
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void incrementTotals(Collection<UserStatsDelta> deltas) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class);
+        int operations = 0;
+
+        for (UserStatsDelta delta : deltas) {
+            Update increments = new Update();
+            if (delta.getSpent().signum() != 0) {
+                increments.inc("totalSpent", delta.getSpent());
+            }
+            if (delta.getRevenue().signum() != 0) {
+                increments.inc("totalRevenue", delta.getRevenue());
+            }
+
+            if (!increments.getUpdateObject().isEmpty()) {
+                bulk.updateOne(Query.query(Criteria.where("_id").is(delta.getUserId())), increments);
+                operations++;
+            }
+        }
+
+        if (operations > 0) {
+            bulk.execute();
+        }
+    }
+
+    /**
+     * Folds freshly updated product totals into each user's materialized top-N. Totals only
+     * grow, so replacing the updated entries and re-sorting with $push/$sort/$slice keeps the
+     * list exact. Users whose list has not been initialised yet are left untouched.
+     */
+    @Override
+    public void mergeTopProducts(Map<String, List<ProductStat>> updatedStats, ProductStatSort sort, int size) {
+        if (updatedStats.isEmpty()) {
+            return;
+        }
+
+        String field = sort.getTopProductsField();
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, User.class);
+        updatedStats.forEach((userId, stats) -> {
+            Query initialised = Query.query(Criteria.where("_id").is(userId).and(field).exists(true));
+            List<String> productIds = stats.stream().map(ProductStat::getProductId).toList();
+
+            bulk.updateOne(initialised, new Update().pull(field,
+                    new Document("productId", new Document("$in", productIds))));
+            bulk.updateOne(initialised, new Update().push(field)
+                    .sort(Sort.by(Sort.Order.desc(sort.getField()), Sort.Order.asc("productId")))
+                    .slice(size)
+                    .each(stats.toArray()));
+        });
+        bulk.execute();
+    }
+
+    @Override
+    public List<String> findIdsWithoutTopProducts(Collection<String> userIds, ProductStatSort sort) {
+        Query query = Query.query(Criteria.where("_id").in(userIds).and(sort.getTopProductsField()).exists(false));
+        query.fields().include("_id");
+        return mongoTemplate.find(query, User.class).stream().map(User::getId).toList();
+    }
+
+    @Override
+    public void initTopProducts(String userId, ProductStatSort sort, List<ProductStat> topProducts) {
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(userId).and(sort.getTopProductsField()).exists(false)),
+                new Update().set(sort.getTopProductsField(), topProducts),
+                User.class);
+    }
+
+    /**
+     * Loads only the running total and the one materialized top-N list a stats page reads.
+     */
+    @Override
+    public Optional<User> findStatsById(String userId, String totalField, ProductStatSort sort) {
+        Query query = Query.query(Criteria.where("_id").is(userId));
+        query.fields().include(totalField, sort.getTopProductsField());
+        return Optional.ofNullable(mongoTemplate.findOne(query, User.class));
+    }
+
+    @Override
+    public Optional<User> updateName(String userId, String name) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(userId)),
+                new Update().set("name", name),
+                FindAndModifyOptions.options().returnNew(true),
+                User.class));
+    }
+
+    /**
+     * Sets the avatar and returns the document as it was before the update, so the caller
+     * can clean up the previous file.
+     */
+    @Override
+    public Optional<User> replaceAvatar(String userId, String avatar) {
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(userId)),
+                new Update().set("avatar", avatar),
+                User.class));
+    }
+
+    /**
+     * Swaps the stored hash only if it is still the one the caller verified against, so a
+     * rehash never overwrites a password changed in the meantime.
+     */
+    @Override
+    public boolean replacePasswordHash(String userId, String expectedHash, String newHash) {
+        return mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(userId).and("password").is(expectedHash)),
+                new Update().set("password", newHash),
+                User.class).getModifiedCount() > 0;
+    }
+}
@@ -1,53 +1,148 @@
 package io.github.johneliud.user_service.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
 
 @Component
 @Slf4j
 public class JwtUtil {
-    
-    @Value("${jwt.secret}")
-    private String secret;
-    
-    @Value("${jwt.expiration}")
-    private long expiration;
-
-    private SecretKey getSigningKey() {
+
+    private final String keyId;
+    private final SecretKey signingKey;
+    private final Map<String, SecretKey> verificationKeys;
+    private final JwtParser parser;
+    private final long expiration;
+    private final Cache<String, Claims> verifiedTokens;
+
+    /**
+     * @param verificationKeys additional keys still accepted for validation, as
+     *                         {@code kid:secret} pairs separated by commas. During a rotation the
+     *                         retiring key goes here while {@code jwt.secret}/{@code jwt.kid} sign.
+     */
+    public JwtUtil(@Value("${jwt.secret}") String secret,
+                   @Value("${jwt.kid:default}") String keyId,
+                   @Value("${jwt.verification-keys:}") String verificationKeys,
+                   @Value("${jwt.expiration}") long expiration,
+                   @Value("${jwt.cache.maximum-size:100000}") long cacheMaximumSize,
+                   MeterRegistry meterRegistry) {
+        this.keyId = keyId;
+        this.signingKey = hmacKey(secret);
+        this.expiration = expiration;
+
+        Map<String, SecretKey> keys = new HashMap<>();
+        keys.put(keyId, signingKey);
+        for (String entry : verificationKeys.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.trim().split(":", 2);
+            if (parts.length != 2 || parts[0].isBlank()) {
+                throw new IllegalArgumentException("jwt.verification-keys entries must be kid:secret");
+            }
+            keys.putIfAbsent(parts[0], hmacKey(parts[1]));
+        }
+        this.verificationKeys = Map.copyOf(keys);
+
+        this.parser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(JwsHeader header) {
+                        return verificationKey(header.getKeyId());
+                    }
+                })
+                .build();
+
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheMaximumSize)
+                .expireAfter(Expiry.creating((String digest, Claims claims) -> untilExpiry(claims)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwt.verified-tokens");
+    }
+
+    private static Duration untilExpiry(Claims claims) {
+        Date exp = claims.getExpiration();
+        if (exp == null) {
+            return Duration.ZERO;
+        }
+        Duration remaining = Duration.ofMillis(exp.getTime() - System.currentTimeMillis());
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    private static SecretKey hmacKey(String secret) {
         return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
     }
 
+    private Key verificationKey(String kid) {
+        // Tokens issued before key ids were introduced carry no kid and were signed with jwt.secret
+        if (kid == null) {
+            return signingKey;
+        }
+        SecretKey key = verificationKeys.get(kid);
+        if (key == null) {
+            throw new JwtException("Unknown JWT key id: " + kid);
+        }
+        return key;
+    }
+
     public String generateToken(String userId, String email, String role) {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + expiration);
 
         String token = Jwts.builder()
+                .header().keyId(keyId).and()
                 .subject(userId)
                 .claim("email", email)
                 .claim("role", role)
                 .issuedAt(now)
                 .expiration(expiryDate)
-                .signWith(getSigningKey())
+                .signWith(signingKey)
                 .compact();
 
         log.info("JWT token generated for user: {}", userId);
         return token;
     }
 
+    /**
+     * Verified claims are cached under a SHA-256 digest of the token until the token's {@code exp},
+     * so a token presented again skips signature verification and JSON parsing. Tokens that fail
+     * verification are never cached.
+     */
     public Claims extractClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        return verifiedTokens.get(digest(token), digest -> parser.parseSignedClaims(token).getPayload());
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
     }
 
     public String extractUserId(String token) {
@@ -0,0 +1,101 @@
+package io.github.johneliud.user_service.security;
+
+import io.github.johneliud.user_service.exception.TooManyRequestsException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-email and per-client-IP login rate limits, checked before the user lookup so throttled
+ * attempts never reach Mongo or the hashing pool.
+ */
+@Component
+public class LoginThrottle {
+    private final Limiter byIp;
+    private final Limiter byEmail;
+    private final LongSupplier clock;
+
+    @Autowired
+    public LoginThrottle(@Value("${login.throttle.ip.burst:20}") int ipBurst,
+                         @Value("${login.throttle.ip.per-minute:60}") int ipPerMinute,
+                         @Value("${login.throttle.email.burst:5}") int emailBurst,
+                         @Value("${login.throttle.email.per-minute:5}") int emailPerMinute) {
+        this(ipBurst, ipPerMinute, emailBurst, emailPerMinute, System::nanoTime);
+    }
+
+    LoginThrottle(int ipBurst, int ipPerMinute, int emailBurst, int emailPerMinute, LongSupplier clock) {
+        this.byIp = new Limiter(ipBurst, ipPerMinute);
+        this.byEmail = new Limiter(emailBurst, emailPerMinute);
+        this.clock = clock;
+    }
+
+    public void acquire(String email, String clientIp) {
+        long now = clock.getAsLong();
+        long waitNanos = clientIp == null ? 0 : byIp.tryAcquire(clientIp, now);
+        if (waitNanos == 0 && email != null) {
+            waitNanos = byEmail.tryAcquire(email.toLowerCase(Locale.ROOT), now);
+        }
+        if (waitNanos > 0) {
+            throw new TooManyRequestsException("Too many login attempts, please try again later",
+                    Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos)));
+        }
+    }
+
+    /**
+     * Drops buckets that have refilled completely; a missing bucket behaves exactly like a
+     * full one, so this only reclaims memory.
+     */
+    @Scheduled(fixedDelayString = "${login.throttle.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = clock.getAsLong();
+        byIp.sweep(now);
+        byEmail.sweep(now);
+    }
+
+    int size() {
+        return byIp.buckets.size() + byEmail.buckets.size();
+    }
+
+    /**
+     * Token bucket kept as a single theoretical arrival time per key (GCRA): each attempt
+     * pushes it one emission interval forward, and an attempt is allowed while it stays within
+     * {@code burst} intervals of now. Updates are a CAS on one long, with no locks.
+     */
+    private static final class Limiter {
+        private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final long intervalNanos;
+        private final long toleranceNanos;
+
+        Limiter(int burst, int perMinute) {
+            this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / perMinute;
+            this.toleranceNanos = intervalNanos * burst;
+        }
+
+        /** Returns 0 if the attempt is allowed, otherwise how long until the next one would be. */
+        long tryAcquire(String key, long now) {
+            AtomicLong arrival = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+            while (true) {
+                long current = arrival.get();
+                long next = Math.max(current, now) + intervalNanos;
+                long excess = next - now - toleranceNanos;
+                if (excess > 0) {
+                    return excess;
+                }
+                if (arrival.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        void sweep(long now) {
+            buckets.values().removeIf(arrival -> arrival.get() - now <= 0);
+        }
+    }
+}
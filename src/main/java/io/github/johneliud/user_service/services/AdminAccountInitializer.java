@@ -0,0 +1,72 @@
+package io.github.johneliud.user_service.services;
+
+import io.github.johneliud.user_service.models.Role;
+import io.github.johneliud.user_service.models.User;
+import io.github.johneliud.user_service.repositories.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Creates the admin account named by {@code admin.bootstrap.email} on startup if it does not
+ * exist. Admins cannot register or be imported, so this is the only way to obtain a token with
+ * the ADMIN role. An existing account with that email is never promoted.
+ */
+@Service
+@Slf4j
+public class AdminAccountInitializer implements ApplicationRunner {
+    private final UserRepository userRepository;
+    private final PasswordEncoder passwordEncoder;
+    private final String email;
+    private final String password;
+    private final String name;
+
+    public AdminAccountInitializer(UserRepository userRepository,
+                                   PasswordEncoder passwordEncoder,
+                                   @Value("${admin.bootstrap.email:}") String email,
+                                   @Value("${admin.bootstrap.password:}") String password,
+                                   @Value("${admin.bootstrap.name:Administrator}") String name) {
+        this.userRepository = userRepository;
+        this.passwordEncoder = passwordEncoder;
+        this.email = email;
+        this.password = password;
+        this.name = name;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (email.isBlank()) {
+            return;
+        }
+        if (password.isBlank()) {
+            log.warn("admin.bootstrap.email is set without admin.bootstrap.password, no admin account created");
+            return;
+        }
+
+        Optional<User> existing = userRepository.findByEmail(email);
+        if (existing.isPresent()) {
+            if (existing.get().getRole() != Role.ADMIN) {
+                log.warn("Bootstrap admin email {} belongs to a {} account, leaving it unchanged", email, existing.get().getRole());
+            }
+            return;
+        }
+
+        User admin = new User();
+        admin.setName(name);
+        admin.setEmail(email);
+        admin.setPassword(passwordEncoder.encode(password));
+        admin.setRole(Role.ADMIN);
+        try {
+            userRepository.insert(admin);
+            log.info("Created bootstrap admin account: {}", email);
+        } catch (DuplicateKeyException e) {
+            log.info("Bootstrap admin account was created concurrently: {}", email);
+        }
+    }
+}
@@ -3,14 +3,19 @@ package io.github.johneliud.user_service.services;
 import io.github.johneliud.user_service.dto.LoginRequest;
 import io.github.johneliud.user_service.dto.LoginResponse;
 import io.github.johneliud.user_service.dto.UserResponse;
+import io.github.johneliud.user_service.exception.ServiceUnavailableException;
 import io.github.johneliud.user_service.models.User;
 import io.github.johneliud.user_service.repositories.UserRepository;
 import io.github.johneliud.user_service.security.JwtUtil;
+import io.github.johneliud.user_service.security.LoginThrottle;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.util.Optional;
+import java.util.UUID;
+
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -18,21 +23,29 @@ public class AuthService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
+    private final LoginThrottle loginThrottle;
+    private volatile String dummyHash;
 
-    public LoginResponse login(LoginRequest request) {
+    public LoginResponse login(LoginRequest request, String clientIp) {
         log.info("Login attempt for email: {}", request.getEmail());
+        loginThrottle.acquire(request.getEmail(), clientIp);
 
-        User user = userRepository.findByEmail(request.getEmail())
-                .orElseThrow(() -> {
-                    log.warn("Login failed: User not found - {}", request.getEmail());
-                    return new IllegalArgumentException("Invalid email or password");
-                });
+        Optional<User> found = userRepository.findCredentialsByEmail(request.getEmail());
+        if (found.isEmpty()) {
+            // Spend the same hashing time as a real check so response times don't reveal which emails exist
+            passwordEncoder.matches(request.getPassword(), dummyHash());
+            log.warn("Login failed: User not found - {}", request.getEmail());
+            throw new IllegalArgumentException("Invalid email or password");
+        }
+        User user = found.get();
 
         if (!passwordEncoder.matches(request.getPassword(), user.getPassword())) {
             log.warn("Login failed: Invalid password for user - {}", request.getEmail());
             throw new IllegalArgumentException("Invalid email or password");
         }
 
+        upgradePasswordHash(user, request.getPassword());
+
         String token = jwtUtil.generateToken(user.getId(), user.getEmail(), user.getRole().name());
         
         UserResponse userResponse = new UserResponse(
@@ -46,4 +59,30 @@ public class AuthService {
         log.info("Login successful for user: {} with role: {}", user.getId(), user.getRole());
         return new LoginResponse(token, "Bearer", userResponse);
     }
+
+    private String dummyHash() {
+        String hash = dummyHash;
+        if (hash == null) {
+            hash = passwordEncoder.encode(UUID.randomUUID().toString());
+            dummyHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Rewrites hashes made with an older algorithm or a lower cost while the raw password is at
+     * hand. Best effort: a busy hashing pool or a concurrent password change just skips it.
+     */
+    private void upgradePasswordHash(User user, String rawPassword) {
+        if (!passwordEncoder.upgradeEncoding(user.getPassword())) {
+            return;
+        }
+        try {
+            if (userRepository.replacePasswordHash(user.getId(), user.getPassword(), passwordEncoder.encode(rawPassword))) {
+                log.info("Upgraded password hash for user: {}", user.getId());
+            }
+        } catch (ServiceUnavailableException e) {
+            log.debug("Skipped password hash upgrade for user {}: {}", user.getId(), e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,84 @@
+package io.github.johneliud.user_service.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Moves avatars from the old flat layout into the configured {@link AvatarStore} in the
+ * background after startup ({@code avatar.store.migration.enabled}). Readers look in the store
+ * first and fall back to the legacy file, and a file only leaves the legacy layout once the
+ * store has it, so avatars stay servable throughout.
+ */
+@Component
+@Slf4j
+public class AvatarMigrator {
+    private static final int LOG_EVERY = 1000;
+
+    private final AvatarStore avatarStore;
+    private final LegacyAvatarFiles legacyAvatarFiles;
+    private final boolean enabled;
+
+    public AvatarMigrator(AvatarStore avatarStore,
+                          LegacyAvatarFiles legacyAvatarFiles,
+                          @Value("${avatar.store.migration.enabled:true}") boolean enabled) {
+        this.avatarStore = avatarStore;
+        this.legacyAvatarFiles = legacyAvatarFiles;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            Thread.ofVirtual().name("avatar-migrator").start(this::migrateAll);
+        }
+    }
+
+    public int migrateAll() {
+        AtomicInteger migrated = new AtomicInteger();
+        try {
+            legacyAvatarFiles.forEachKey(key -> {
+                try {
+                    if (migrate(key) && migrated.incrementAndGet() % LOG_EVERY == 0) {
+                        log.info("Migrated {} avatar files so far", migrated.get());
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    log.error("Failed to migrate avatar file: {}", key, e);
+                }
+            });
+        } catch (IOException e) {
+            log.error("Avatar migration stopped after {} files", migrated.get(), e);
+        }
+        if (migrated.get() > 0) {
+            log.info("Avatar migration finished: {} files moved", migrated.get());
+        }
+        return migrated.get();
+    }
+
+    /** Moves one legacy file into the store. Returns false if there was no legacy file to move. */
+    public boolean migrate(String key) throws IOException {
+        Optional<AvatarStore.StoredObject> legacy = legacyAvatarFiles.stat(key);
+        if (legacy.isEmpty()) {
+            return false;
+        }
+        try {
+            if (avatarStore.stat(key).isPresent()) {
+                legacyAvatarFiles.delete(key);
+            } else {
+                avatarStore.put(key, legacy.get().localPath());
+            }
+            return true;
+        } catch (NoSuchFileException e) {
+            // Moved or deleted concurrently, e.g. by the blob sweeper
+            return false;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package io.github.johneliud.user_service.services;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Where avatar bytes live. Keys are file names such as {@code <sha256>.png}, optionally under
+ * a {@code thumbnails/} or {@code trash/} prefix; each implementation picks its own physical
+ * layout. Selected with {@code avatar.store.type}.
+ */
+public interface AvatarStore {
+    Optional<StoredObject> stat(String key) throws IOException;
+
+    /** Stores the file under {@code key}, replacing any existing object, and consumes {@code source}. */
+    void put(String key, Path source) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /** Moves an object to another key. Returns false if there was nothing to move. Need not be atomic. */
+    boolean move(String fromKey, String toKey) throws IOException;
+
+    /**
+     * An object's metadata and a resource to read it. {@code localPath} is set when the bytes are
+     * on this node's disk, so they can be served with sendfile; it is null for remote stores.
+     */
+    record StoredObject(long size, Instant lastModified, Resource resource, Path localPath) {
+    }
+}
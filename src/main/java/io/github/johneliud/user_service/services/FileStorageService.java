@@ -1,33 +1,166 @@
 package io.github.johneliud.user_service.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.johneliud.user_service.models.AvatarBlob;
+import io.github.johneliud.user_service.repositories.AvatarBlobRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+/**
+ * Validates, stores and serves avatars. Bytes live in the configured {@link AvatarStore};
+ * uploads are staged on local disk first, under {@code file.upload.dir/.staging}.
+ */
 @Service
 @Slf4j
 public class FileStorageService {
     private static final long MAX_FILE_SIZE = 2 * 1024 * 1024; // 2MB
+    private static final int HEADER_SIZE = 12; // Enough for the longest signature checked (WEBP)
+    private static final int COPY_BUFFER_SIZE = 8192;
     private static final List<String> ALLOWED_EXTENSIONS = Arrays.asList("png", "jpg", "jpeg", "webp");
     private static final List<String> ALLOWED_MIME_TYPES = Arrays.asList(
         "image/png", "image/jpeg", "image/jpg", "image/webp"
     );
     
-    @Value("${file.upload.dir:uploads/avatars}")
-    private String uploadDir;
+    private static final int MAX_CACHED_AVATARS = 10_000;
 
+    private static final String THUMBNAIL_PREFIX = "thumbnails/";
+    private static final String TRASH_PREFIX = "trash/";
+    private static final String THUMBNAIL_EXTENSION = "jpg";
+    private static final String UNRENDERABLE_EXTENSION = "none";
+    private static final float THUMBNAIL_QUALITY = 0.85f;
+    // Uploads are capped at 2MB, but a compressed image can still claim huge dimensions
+    private static final long MAX_SOURCE_PIXELS = 50_000_000L;
+
+    private static final Pattern AVATAR_NAME = Pattern.compile("^[A-Za-z0-9][A-Za-z0-9_-]*\\.[A-Za-z0-9]+$");
+    private static final Pattern CONTENT_ADDRESSED_NAME = Pattern.compile("^([0-9a-f]{64})(-\\d+)?\\.[a-z]+$");
+    private static final int SWEEP_BATCH_SIZE = 500;
+
+    private final AvatarBlobRepository avatarBlobRepository;
+    private final AvatarStore avatarStore;
+    private final LegacyAvatarFiles legacyAvatarFiles;
+    private final AvatarMigrator avatarMigrator;
+    private final String uploadDir;
+    private final Duration sweepGrace;
+    private final List<Integer> thumbnailSizes;
+    private final ExecutorService thumbnailExecutor;
+    private final Set<String> pendingThumbnails = ConcurrentHashMap.newKeySet();
+
+    // Avatars stored before content addressing have to be hashed for their ETag; checked against size and mtime on use
+    private final Cache<String, ContentHash> legacyHashes = Caffeine.newBuilder()
+            .maximumSize(MAX_CACHED_AVATARS)
+            .build();
+
+    /**
+     * A committed avatar or one of its thumbnails, with the validators used for conditional
+     * requests. The ETag is the SHA-256 of the content, so it stays stable across restarts and
+     * nodes sharing storage. {@code localPath} is set when the file is on this node's disk.
+     * {@code provisional} is set when a thumbnail was asked for but is not rendered yet and the
+     * original is returned in its place.
+     */
+    public record StoredAvatar(String filename, Resource resource, Path localPath, long contentLength,
+                               Instant lastModified, String etag, boolean provisional) {
+    }
+
+    /**
+     * An upload written to the staging directory under a private temporary name, with the
+     * content-addressed {@code filename} it will be stored under once committed.
+     */
+    public record StagedAvatar(String filename, Path path, long size) {
+    }
+
+    private record ContentHash(long size, Instant lastModified, String etag) {
+    }
+
+    @Autowired
+    public FileStorageService(AvatarBlobRepository avatarBlobRepository,
+                              AvatarStore avatarStore,
+                              LegacyAvatarFiles legacyAvatarFiles,
+                              AvatarMigrator avatarMigrator,
+                              @Value("${file.upload.dir:uploads/avatars}") String uploadDir,
+                              @Value("${avatar.blobs.sweep-grace:10m}") Duration sweepGrace,
+                              @Value("${avatar.thumbnail.sizes:64,128,256}") List<Integer> thumbnailSizes,
+                              @Value("${avatar.thumbnail.threads:2}") int thumbnailThreads) {
+        this(avatarBlobRepository, avatarStore, legacyAvatarFiles, avatarMigrator, uploadDir, sweepGrace,
+                thumbnailSizes, Executors.newFixedThreadPool(thumbnailThreads));
+    }
+
+    FileStorageService(AvatarBlobRepository avatarBlobRepository, AvatarStore avatarStore,
+                       LegacyAvatarFiles legacyAvatarFiles, AvatarMigrator avatarMigrator, String uploadDir,
+                       Duration sweepGrace, List<Integer> thumbnailSizes, ExecutorService thumbnailExecutor) {
+        this.avatarBlobRepository = avatarBlobRepository;
+        this.avatarStore = avatarStore;
+        this.legacyAvatarFiles = legacyAvatarFiles;
+        this.avatarMigrator = avatarMigrator;
+        this.uploadDir = uploadDir;
+        this.sweepGrace = sweepGrace;
+        this.thumbnailSizes = thumbnailSizes.stream().sorted().distinct().toList();
+        this.thumbnailExecutor = thumbnailExecutor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        thumbnailExecutor.close();
+    }
+
+    /** Stores the avatar and takes one reference to it; drop it with {@link #releaseAvatar}. */
     public String storeAvatar(MultipartFile file) {
-        log.info("Attempting to store avatar file: {}", file.getOriginalFilename());
+        StagedAvatar staged = stageAvatar(file);
+        commitAvatar(staged);
+        return staged.filename();
+    }
+
+    /**
+     * Validates and writes the avatar to a staging directory next to the upload directory, where
+     * it is not served, hashing it on the way. Call {@link #commitAvatar} once the owning user
+     * document is written, or {@link #discardStagedAvatar} if that fails.
+     */
+    public StagedAvatar stageAvatar(MultipartFile file) {
+        log.info("Attempting to stage avatar file: {}", file.getOriginalFilename());
 
         if (file.isEmpty()) {
             log.warn("Avatar upload failed: File is empty");
@@ -53,48 +186,131 @@ public class FileStorageService {
             throw new IllegalArgumentException("Only PNG, JPG, JPEG, and WEBP files are allowed");
         }
 
-        validateImageIntegrity(file);
+        Path stagingPath = stagingDir();
+        Path tempFile = null;
+        try (InputStream in = file.getInputStream()) {
+            byte[] header = in.readNBytes(HEADER_SIZE);
+            String imageExtension = detectImageExtension(header);
 
-        try {
-            Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-                log.info("Created upload directory: {}", uploadPath);
+            if (!Files.exists(stagingPath)) {
+                Files.createDirectories(stagingPath);
+                log.info("Created staging directory: {}", stagingPath);
+            }
+
+            // Staged under a private name, so concurrent uploads of the same image never share a file
+            tempFile = Files.createTempFile(stagingPath, "upload-", ".tmp");
+            MessageDigest digest = sha256();
+            try (OutputStream out = new DigestOutputStream(Files.newOutputStream(tempFile), digest)) {
+                out.write(header);
+                copyWithLimit(in, out, MAX_FILE_SIZE - header.length);
             }
 
-            String filename = UUID.randomUUID() + "." + extension;
-            Path filePath = uploadPath.resolve(filename);
-            Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+            // Named after the detected format rather than the client's extension, so identical bytes get one name
+            String filename = HexFormat.of().formatHex(digest.digest()) + "." + imageExtension;
             
-            log.info("Avatar stored successfully: {}", filename);
-            return filename;
+            log.info("Avatar staged successfully: {}", filename);
+            return new StagedAvatar(filename, tempFile, Files.size(tempFile));
         } catch (IOException e) {
+            deleteQuietly(tempFile);
             log.error("Failed to store avatar file", e);
             throw new RuntimeException("Failed to store file", e);
+        } catch (RuntimeException e) {
+            deleteQuietly(tempFile);
+            throw e;
         }
     }
 
-    private void validateImageIntegrity(MultipartFile file) {
-        try {
-            byte[] bytes = file.getBytes();
-            if (bytes.length < 8) {
-                log.warn("Image validation failed: File too small to be a valid image");
-                throw new IllegalArgumentException("Invalid image file");
+    /**
+     * Copies through a fixed-size buffer and fails as soon as more than {@code limit} bytes have
+     * been read, so an upload never costs more heap than the buffer whatever its declared size.
+     */
+    private static void copyWithLimit(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        long remaining = limit;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            remaining -= read;
+            if (remaining < 0) {
+                log.warn("Avatar upload failed: File exceeds 2MB limit while streaming");
+                throw new IllegalArgumentException("File size exceeds 2MB limit");
             }
+            out.write(buffer, 0, read);
+        }
+    }
 
-            // Check magic bytes for common image formats
-            if (isPNG(bytes) || isJPEG(bytes) || isWEBP(bytes)) {
-                return;
+    private void deleteQuietly(Path path) {
+        if (path == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.error("Failed to delete temporary upload: {}", path, e);
+        }
+    }
+
+    /**
+     * Takes a reference to the staged content and makes sure the blob is stored. The reference
+     * is taken first so a concurrent {@link #sweepUnreferencedBlobs} cannot remove the blob after
+     * it has been found present; if the same image is already stored, the staged copy is simply
+     * dropped and only the reference count changes.
+     */
+    public void commitAvatar(StagedAvatar staged) {
+        String filename = staged.filename();
+        try {
+            avatarBlobRepository.acquire(filename, staged.size());
+            if (stat(filename).isPresent()) {
+                Files.deleteIfExists(staged.path());
+                log.info("Avatar already stored, added reference: {}", filename);
+            } else {
+                avatarStore.put(filename, staged.path());
+                log.info("Avatar stored successfully: {}", filename);
             }
+            scheduleThumbnails(filename);
+        } catch (IOException e) {
+            log.error("Failed to commit avatar file: {}", filename, e);
+            throw new RuntimeException("Failed to store file", e);
+        }
+    }
 
-            log.warn("Image validation failed: File does not match expected image format");
-            throw new IllegalArgumentException("Invalid image file");
+    public void discardStagedAvatar(StagedAvatar staged) {
+        if (staged == null) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(staged.path());
+            log.info("Staged avatar discarded: {}", staged.filename());
         } catch (IOException e) {
-            log.error("Failed to validate image integrity", e);
-            throw new RuntimeException("Failed to validate image", e);
+            log.error("Failed to discard staged avatar: {}", staged.filename(), e);
         }
     }
 
+    private Path stagingDir() {
+        return Paths.get(uploadDir).resolve(".staging");
+    }
+
+    private String detectImageExtension(byte[] header) {
+        if (header.length < 8) {
+            log.warn("Image validation failed: File too small to be a valid image");
+            throw new IllegalArgumentException("Invalid image file");
+        }
+
+        // Check magic bytes for common image formats
+        if (isPNG(header)) {
+            return "png";
+        }
+        if (isJPEG(header)) {
+            return "jpg";
+        }
+        if (isWEBP(header)) {
+            return "webp";
+        }
+
+        log.warn("Image validation failed: File does not match expected image format");
+        throw new IllegalArgumentException("Invalid image file");
+    }
+
     private boolean isPNG(byte[] bytes) {
         return bytes.length >= 8 &&
                bytes[0] == (byte) 0x89 && bytes[1] == 0x50 &&
@@ -117,20 +333,403 @@ public class FileStorageService {
                bytes[10] == 0x42 && bytes[11] == 0x50;
     }
 
-    public void deleteAvatar(String filename) {
+    public Optional<StoredAvatar> findAvatar(String filename) {
+        return findAvatar(filename, null);
+    }
+
+    /**
+     * Looks up a committed avatar. Returns empty if there is no such avatar and rejects names
+     * that are not plain file names.
+     *
+     * <p>With a {@code size}, returns the smallest thumbnail at least that large, or the original
+     * if the size exceeds every thumbnail. A thumbnail that is missing, e.g. for an avatar stored
+     * before thumbnails existed, is scheduled for rendering and the original is returned meanwhile.
+     * An avatar already found unrenderable is returned as is and not marked provisional.
+     */
+    public Optional<StoredAvatar> findAvatar(String filename, Integer size) {
+        if (!AVATAR_NAME.matcher(filename).matches()) {
+            log.warn("Avatar lookup rejected: Invalid path - {}", filename);
+            throw new IllegalArgumentException("Invalid avatar path");
+        }
+        if (size != null && size <= 0) {
+            throw new IllegalArgumentException("Size must be positive");
+        }
+
+        try {
+            Integer thumbnailSize = size == null ? null : thumbnailSizeFor(size);
+            boolean pending = false;
+            if (thumbnailSize != null) {
+                Optional<StoredAvatar> thumbnail = describe(thumbnailKey(filename, thumbnailSize), false);
+                if (thumbnail.isPresent()) {
+                    return thumbnail;
+                }
+                pending = avatarStore.stat(unrenderableKey(filename)).isEmpty();
+            }
+
+            Optional<StoredAvatar> original = describe(filename, pending);
+            if (original.isPresent() && pending) {
+                scheduleThumbnails(filename);
+            }
+            return original;
+        } catch (IOException e) {
+            log.error("Failed to read avatar: {}", filename, e);
+            throw new RuntimeException("Failed to read file", e);
+        }
+    }
+
+    private Integer thumbnailSizeFor(int size) {
+        for (int thumbnailSize : thumbnailSizes) {
+            if (thumbnailSize >= size) {
+                return thumbnailSize;
+            }
+        }
+        return null;
+    }
+
+    /** Looks in the store, then in the legacy flat layout for files not migrated yet. */
+    private Optional<AvatarStore.StoredObject> stat(String key) throws IOException {
+        Optional<AvatarStore.StoredObject> stored = avatarStore.stat(key);
+        return stored.isPresent() ? stored : legacyAvatarFiles.stat(key);
+    }
+
+    private Optional<StoredAvatar> describe(String key, boolean provisional) throws IOException {
+        Optional<AvatarStore.StoredObject> found = stat(key);
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+
+        AvatarStore.StoredObject object = found.get();
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        Matcher contentAddressed = CONTENT_ADDRESSED_NAME.matcher(name);
+        String etag;
+        if (contentAddressed.matches()) {
+            // The name is the content hash (plus the thumbnail size), so there is nothing to compute
+            etag = contentAddressed.group(1) + (contentAddressed.group(2) == null ? "" : contentAddressed.group(2));
+        } else {
+            ContentHash cached = legacyHashes.getIfPresent(key);
+            if (cached == null || cached.size() != object.size() || !cached.lastModified().equals(object.lastModified())) {
+                cached = new ContentHash(object.size(), object.lastModified(), contentHash(object.resource()));
+                legacyHashes.put(key, cached);
+            }
+            etag = cached.etag();
+        }
+        return Optional.of(new StoredAvatar(name, object.resource(), object.localPath(), object.size(),
+                object.lastModified(), etag, provisional));
+    }
+
+    private static String contentHash(Resource resource) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = resource.getInputStream();
+             OutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            in.transferTo(out);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Drops one reference to the avatar. Content-addressed blobs stay stored until the sweeper
+     * finds them unreferenced past the grace period, so re-uploading a just-replaced image is
+     * still a metadata-only operation. Untracked avatars from before content addressing are
+     * deleted right away. A content-addressed blob that has no reference left to release is left
+     * to the sweeper too, since a concurrent {@link #commitAvatar} may just have referenced it.
+     */
+    public void releaseAvatar(String filename) {
         if (filename == null || filename.isEmpty()) {
             return;
         }
 
+        if (avatarBlobRepository.release(filename).isPresent()) {
+            log.info("Avatar reference released: {}", filename);
+            return;
+        }
+        if (CONTENT_ADDRESSED_NAME.matcher(filename).matches()) {
+            log.warn("Avatar has no reference to release, leaving it to the sweeper: {}", filename);
+            return;
+        }
+
         try {
-            Path filePath = Paths.get(uploadDir).resolve(filename);
-            Files.deleteIfExists(filePath);
+            avatarStore.delete(filename);
+            legacyAvatarFiles.delete(filename);
+            legacyHashes.invalidate(filename);
+            deleteThumbnails(filename);
             log.info("Avatar deleted: {}", filename);
         } catch (IOException e) {
             log.error("Failed to delete avatar: {}", filename, e);
         }
     }
 
+    /**
+     * Removes blobs that have had no references for the grace period. Each blob is first moved
+     * to a trash key and its record deleted only if still unreferenced; if a new upload took a
+     * reference in between, the blob is put back. Together with {@link #commitAvatar} taking its
+     * reference before checking the store, a blob is never removed while referenced.
+     */
+    @Scheduled(fixedDelayString = "${avatar.blobs.sweep-interval-ms:600000}")
+    public void sweepUnreferencedBlobs() {
+        Instant cutoff = Instant.now().minus(sweepGrace);
+        int removed = 0;
+        for (AvatarBlob blob : avatarBlobRepository.findUnreferencedBefore(cutoff, SWEEP_BATCH_SIZE)) {
+            try {
+                if (sweepBlob(blob.getId(), cutoff)) {
+                    removed++;
+                }
+            } catch (IOException e) {
+                log.error("Failed to sweep avatar blob: {}", blob.getId(), e);
+            }
+        }
+        if (removed > 0) {
+            log.info("Swept {} unreferenced avatar blobs", removed);
+        }
+    }
+
+    private boolean sweepBlob(String filename, Instant cutoff) throws IOException {
+        // Run the whole protocol within the store, not across it and the legacy layout
+        avatarMigrator.migrate(filename);
+
+        String trashKey = TRASH_PREFIX + filename + "." + UUID.randomUUID();
+        boolean moved = avatarStore.move(filename, trashKey);
+
+        if (avatarBlobRepository.deleteIfUnreferenced(filename, cutoff)) {
+            if (moved) {
+                avatarStore.delete(trashKey);
+            }
+            deleteThumbnails(filename);
+            return true;
+        }
+
+        if (moved) {
+            if (avatarStore.stat(filename).isPresent()) {
+                avatarStore.delete(trashKey);
+            } else {
+                avatarStore.move(trashKey, filename);
+            }
+        }
+        return false;
+    }
+
+    private void deleteThumbnails(String filename) throws IOException {
+        for (int size : thumbnailSizes) {
+            String key = thumbnailKey(filename, size);
+            avatarStore.delete(key);
+            legacyAvatarFiles.delete(key);
+            legacyHashes.invalidate(key);
+        }
+        avatarStore.delete(unrenderableKey(filename));
+    }
+
+    private String thumbnailKey(String filename, int size) {
+        return THUMBNAIL_PREFIX + baseName(filename) + "-" + size + "." + THUMBNAIL_EXTENSION;
+    }
+
+    /** An empty object recording that the avatar cannot be rendered, so it is not retried on every request. */
+    private String unrenderableKey(String filename) {
+        return THUMBNAIL_PREFIX + baseName(filename) + "." + UNRENDERABLE_EXTENSION;
+    }
+
+    private static String baseName(String filename) {
+        return filename.contains(".") ? filename.substring(0, filename.lastIndexOf('.')) : filename;
+    }
+
+    /**
+     * Renders thumbnails off the request thread. At most one render per avatar is queued at a
+     * time; if the pool is shutting down the avatar is simply served at full size.
+     */
+    private void scheduleThumbnails(String filename) {
+        if (thumbnailSizes.isEmpty() || thumbnailsSettled(filename) || !pendingThumbnails.add(filename)) {
+            return;
+        }
+        try {
+            thumbnailExecutor.execute(() -> {
+                try {
+                    renderThumbnails(filename);
+                } finally {
+                    pendingThumbnails.remove(filename);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingThumbnails.remove(filename);
+            log.warn("Thumbnail rendering rejected for avatar: {}", filename);
+        }
+    }
+
+    /** True once thumbnails are rendered or the avatar is known to be unrenderable. */
+    private boolean thumbnailsSettled(String filename) {
+        try {
+            return stat(thumbnailKey(filename, thumbnailSizes.getLast())).isPresent()
+                    || avatarStore.stat(unrenderableKey(filename)).isPresent();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void renderThumbnails(String filename) {
+        try {
+            Optional<AvatarStore.StoredObject> source = stat(filename);
+            if (source.isEmpty()) {
+                return;
+            }
+
+            BufferedImage image;
+            try (InputStream in = source.get().resource().getInputStream()) {
+                image = readForThumbnails(in, thumbnailSizes.getLast());
+            }
+
+            Path dir = stagingDir();
+            Files.createDirectories(dir);
+            if (image == null) {
+                // Content-addressed avatars never change, so this holds until the avatar is deleted
+                Path temp = Files.createTempFile(dir, "thumb-", ".tmp");
+                try {
+                    avatarStore.put(unrenderableKey(filename), temp);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                log.info("No thumbnails for avatar {}: format not readable, image too large or corrupt", filename);
+            } else {
+                for (int size : thumbnailSizes) {
+                    Path temp = Files.createTempFile(dir, "thumb-", ".tmp");
+                    try {
+                        writeJpeg(scale(image, size), temp);
+                        avatarStore.put(thumbnailKey(filename, size), temp);
+                    } finally {
+                        Files.deleteIfExists(temp);
+                    }
+                }
+            }
+
+            // The avatar may have been deleted while rendering; don't leave orphaned thumbnails
+            if (stat(filename).isEmpty()) {
+                deleteThumbnails(filename);
+                return;
+            }
+            if (image != null) {
+                log.info("Thumbnails rendered for avatar: {}", filename);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to render thumbnails for avatar: {}", filename, e);
+        }
+    }
+
+    /**
+     * Decodes the image, skipping pixels when it is much larger than the biggest thumbnail so a
+     * large upload never expands to its full resolution in memory. Returns null for formats the
+     * JDK cannot read (WEBP), for images with implausible dimensions and for data the decoder
+     * rejects. A failure reading the source itself is rethrown so it is retried later.
+     */
+    private static BufferedImage readForThumbnails(InputStream source, int largestSize) throws IOException {
+        FailureTrackingInputStream tracked = new FailureTrackingInputStream(source);
+        try (ImageInputStream in = ImageIO.createImageInputStream(tracked)) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > MAX_SOURCE_PIXELS) {
+                    return null;
+                }
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, Math.max(width, height) / (2 * largestSize));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } catch (IOException | RuntimeException e) {
+                // Decoders wrap source read errors too, so only a source that never failed means corrupt data
+                if (tracked.failed) {
+                    throw e;
+                }
+                log.debug("Avatar image data could not be decoded", e);
+                return null;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /** Remembers whether the wrapped stream threw, telling a storage failure apart from a corrupt image. */
+    private static final class FailureTrackingInputStream extends FilterInputStream {
+        private volatile boolean failed;
+
+        FailureTrackingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            try {
+                return super.read(buffer, offset, length);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            try {
+                return super.skip(n);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+    }
+
+    /** Fits the image within {@code size} x {@code size}, never upscaling, on a white background since JPEG has no alpha. */
+    private static BufferedImage scale(BufferedImage source, int size) {
+        double ratio = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private static void writeJpeg(BufferedImage image, Path target) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(target.toFile())) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(THUMBNAIL_QUALITY);
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
     private String getFileExtension(String filename) {
         if (filename == null || !filename.contains(".")) {
             return "";
@@ -0,0 +1,48 @@
+package io.github.johneliud.user_service.services;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts invalidations over Kafka. Every instance consumes with its own consumer group,
+ * so each node sees every invalidation, including its own.
+ */
+@Component
+@ConditionalOnProperty(name = "profile.cache.invalidation", havingValue = "kafka")
+@RequiredArgsConstructor
+@Slf4j
+public class KafkaProfileInvalidationBus implements ProfileInvalidationBus {
+    public static final String PROFILE_INVALIDATED_TOPIC = "user-profile-invalidated";
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String userId) {
+        kafkaTemplate.send(PROFILE_INVALIDATED_TOPIC, userId, userId)
+                .exceptionally(e -> {
+                    log.warn("Failed to publish profile invalidation for user {}: {}", userId, e.getMessage());
+                    return null;
+                });
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    @KafkaListener(topics = PROFILE_INVALIDATED_TOPIC,
+            groupId = "${spring.kafka.consumer.group-id}-profile-#{T(java.util.UUID).randomUUID()}",
+            containerFactory = "invalidationKafkaListenerContainerFactory")
+    public void onInvalidation(String userId) {
+        listeners.forEach(listener -> listener.accept(userId));
+    }
+}
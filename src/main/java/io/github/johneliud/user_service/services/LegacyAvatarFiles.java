@@ -0,0 +1,75 @@
+package io.github.johneliud.user_service.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Read and delete access to avatars in the old flat layout: originals directly in
+ * {@code file.upload.dir} and thumbnails in its {@code .thumbnails} directory. Lookups fall back
+ * here until {@link AvatarMigrator} has moved everything into the {@link AvatarStore}.
+ */
+@Component
+public class LegacyAvatarFiles {
+    private static final String THUMBNAIL_PREFIX = "thumbnails/";
+
+    private final Path root;
+
+    public LegacyAvatarFiles(@Value("${file.upload.dir:uploads/avatars}") String uploadDir) {
+        this.root = Paths.get(uploadDir).toAbsolutePath().normalize();
+    }
+
+    public Optional<AvatarStore.StoredObject> stat(String key) throws IOException {
+        Path path = pathFor(key);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        if (!attributes.isRegularFile()) {
+            return Optional.empty();
+        }
+        return Optional.of(new AvatarStore.StoredObject(attributes.size(), attributes.lastModifiedTime().toInstant(),
+                new FileSystemResource(path), path));
+    }
+
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(pathFor(key));
+    }
+
+    /** Visits every legacy file by key. Hidden and temporary files are skipped. */
+    public void forEachKey(Consumer<String> action) throws IOException {
+        visit(root, "", action);
+        visit(root.resolve(".thumbnails"), THUMBNAIL_PREFIX, action);
+    }
+
+    Path pathFor(String key) {
+        return key.startsWith(THUMBNAIL_PREFIX)
+                ? root.resolve(".thumbnails").resolve(key.substring(THUMBNAIL_PREFIX.length()))
+                : root.resolve(key);
+    }
+
+    private static void visit(Path dir, String prefix, Consumer<String> action) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, path ->
+                Files.isRegularFile(path) && !path.getFileName().toString().startsWith(".")
+                        && !path.getFileName().toString().endsWith(".tmp"))) {
+            for (Path file : files) {
+                action.accept(prefix + file.getFileName());
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.johneliud.user_service.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+
+/**
+ * Stores avatars under {@code file.upload.dir}, sharded by the first two pairs of characters of
+ * the file name ({@code ab/cd/abcd...png}). Names are content hashes or UUIDs, so shards fill
+ * evenly and no directory grows past a few hundred entries per million avatars.
+ */
+@Component
+@ConditionalOnProperty(name = "avatar.store.type", havingValue = "local", matchIfMissing = true)
+public class LocalAvatarStore implements AvatarStore {
+    private static final int SHARD_WIDTH = 2;
+
+    private final Path root;
+
+    public LocalAvatarStore(@Value("${file.upload.dir:uploads/avatars}") String uploadDir) {
+        this.root = Paths.get(uploadDir).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) throws IOException {
+        Path path = pathFor(key);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        if (!attributes.isRegularFile()) {
+            return Optional.empty();
+        }
+        return Optional.of(new StoredObject(attributes.size(), attributes.lastModifiedTime().toInstant(),
+                new FileSystemResource(path), path));
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        Path target = pathFor(key);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // Source on another filesystem: copy beside the target first, so the rename into place is still atomic
+            Path temp = Files.createTempFile(target.getParent(), ".put-", ".tmp");
+            try {
+                Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(pathFor(key));
+    }
+
+    @Override
+    public boolean move(String fromKey, String toKey) throws IOException {
+        Path target = pathFor(toKey);
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(pathFor(fromKey), target, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    Path pathFor(String key) {
+        int slash = key.lastIndexOf('/');
+        String name = key.substring(slash + 1);
+        Path dir = slash < 0 ? root : root.resolve(key.substring(0, slash));
+        if (name.length() > 2 * SHARD_WIDTH) {
+            dir = dir.resolve(name.substring(0, SHARD_WIDTH)).resolve(name.substring(SHARD_WIDTH, 2 * SHARD_WIDTH));
+        }
+        return dir.resolve(name);
+    }
+}
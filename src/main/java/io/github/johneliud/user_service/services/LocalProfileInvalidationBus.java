@@ -0,0 +1,28 @@
+package io.github.johneliud.user_service.services;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-process stand-in for the broker: delivers invalidations to subscribers in this JVM only.
+ * Enough for a single node, and for exercising the invalidation path in tests.
+ */
+@Component
+@ConditionalOnProperty(name = "profile.cache.invalidation", havingValue = "local", matchIfMissing = true)
+public class LocalProfileInvalidationBus implements ProfileInvalidationBus {
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String userId) {
+        listeners.forEach(listener -> listener.accept(userId));
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+}
@@ -1,19 +1,48 @@
 package io.github.johneliud.user_service.services;
 
+import com.mongodb.MongoException;
 import io.github.johneliud.user_service.dto.OrderItemEvent;
 import io.github.johneliud.user_service.dto.OrderPlacedEvent;
-import io.github.johneliud.user_service.models.ProductStat;
-import io.github.johneliud.user_service.models.User;
+import io.github.johneliud.user_service.models.ProcessedOrder;
+import io.github.johneliud.user_service.models.UserStatsDelta;
+import io.github.johneliud.user_service.repositories.UserProductStatRepository;
 import io.github.johneliud.user_service.repositories.UserRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.kafka.annotation.BackOff;
+import org.springframework.kafka.annotation.DltHandler;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.annotation.RetryableTopic;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.core.JacksonException;
 import tools.jackson.databind.ObjectMapper;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 @RequiredArgsConstructor
@@ -21,58 +50,269 @@ import java.util.List;
 public class OrderEventConsumer {
 
     private final UserRepository userRepository;
+    private final UserProductStatRepository userProductStatRepository;
+    private final TopProductsService topProductsService;
+    private final ProcessedOrderLedger processedOrderLedger;
+    private final TransactionTemplate transactionTemplate;
+    private final OrderEventRecoveryService orderEventRecoveryService;
     private final ObjectMapper objectMapper;
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(OrderEventConsumer.class);
+
+    private final ExecutorService laneExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${stats.consumer.parallelism:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int parallelism;
+
+    @Value("${stats.consumer.min-users-per-lane:50}")
+    private int minUsersPerLane = 50;
+
+    @Value("${stats.consumer.transaction-attempts:5}")
+    private int transactionAttempts = 5;
+
+    @Value("${stats.consumer.transaction-retry-delay-ms:20}")
+    private long transactionRetryDelayMs = 20;
+
+    @PreDestroy
+    public void shutdown() {
+        laneExecutor.close();
+    }
+
+    @KafkaListener(topics = OrderEventRecoveryService.ORDER_PLACED_TOPIC, groupId = "${spring.kafka.consumer.group-id}")
+    public void handleOrderPlacedMessages(List<ConsumerRecord<String, OrderPlacedEvent>> records) {
+        List<OrderPlacedEvent> events = new ArrayList<>(records.size());
+        List<ConsumerRecord<String, OrderPlacedEvent>> accepted = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, OrderPlacedEvent> record : records) {
+            OrderPlacedEvent event = record.value();
+            if (event == null) {
+                parkUndecodable(record);
+            } else if (isValid(event)) {
+                events.add(event);
+                accepted.add(record);
+            } else {
+                orderEventRecoveryService.park(record.key(), objectMapper.writeValueAsString(event),
+                        "Missing required order-placed fields", record.topic());
+            }
+        }
 
-    @KafkaListener(topics = "order-placed", groupId = "${spring.kafka.consumer.group-id}")
-    public void handleOrderPlacedMessage(String message) {
         try {
-            handleOrderPlaced(objectMapper.readValue(message, OrderPlacedEvent.class));
-        } catch (Exception e) {
-            log.error("Failed to deserialize order-placed event: {}", e.getMessage());
+            handleOrderPlacedBatch(events);
+        } catch (DataAccessException | TransactionException e) {
+            log.warn("Failed to apply {} order-placed events, forwarding for retry: {}", events.size(), e.getMessage());
+            orderEventRecoveryService.forwardForRetry(accepted);
+        }
+    }
+
+    private void parkUndecodable(ConsumerRecord<String, OrderPlacedEvent> record) {
+        DeserializationException failure = SerializationUtils.getExceptionFromHeader(
+                record, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+        if (failure == null) {
+            orderEventRecoveryService.park(record.key(), null, "Empty order-placed payload", record.topic());
+            return;
+        }
+        String reason = failure.getCause() != null ? failure.getCause().getMessage() : failure.getMessage();
+        log.error("Failed to deserialize order-placed event: {}", reason);
+        String payload = failure.getData() == null ? null : new String(failure.getData(), StandardCharsets.UTF_8);
+        orderEventRecoveryService.park(record.key(), payload, reason, record.topic());
+    }
+
+    @RetryableTopic(
+            attempts = "${kafka.order-placed.retry.attempts:5}",
+            backOff = @BackOff(delayString = "${kafka.order-placed.retry.initial-delay:1000}",
+                    multiplier = 2.0,
+                    maxDelayString = "${kafka.order-placed.retry.max-delay:60000}"),
+            kafkaTemplate = "kafkaTemplate",
+            listenerContainerFactory = "retryKafkaListenerContainerFactory",
+            exclude = {JacksonException.class, IllegalArgumentException.class})
+    @KafkaListener(topics = OrderEventRecoveryService.ORDER_PLACED_RETRY_TOPIC,
+            groupId = "${spring.kafka.consumer.group-id}",
+            containerFactory = "retryKafkaListenerContainerFactory")
+    public void handleOrderPlacedRetry(String message) {
+        OrderPlacedEvent event = objectMapper.readValue(message, OrderPlacedEvent.class);
+        // Recovered batches can carry invalid events too; send them straight to the DLT to be parked
+        if (event == null || !isValid(event)) {
+            throw new IllegalArgumentException("Missing required order-placed fields");
         }
+        handleOrderPlaced(event);
+    }
+
+    @DltHandler
+    public void handleOrderPlacedDeadLetter(ConsumerRecord<String, String> record,
+                                            @Header(name = KafkaHeaders.DLT_EXCEPTION_MESSAGE, required = false) byte[] reason) {
+        orderEventRecoveryService.park(record.key(), record.value(),
+                reason == null ? "Retries exhausted" : new String(reason, StandardCharsets.UTF_8),
+                OrderEventRecoveryService.ORDER_PLACED_RETRY_TOPIC);
     }
 
     public void handleOrderPlaced(OrderPlacedEvent event) {
-        log.info("Received order-placed event: orderId={}", event.getOrderId());
-
-        userRepository.findById(event.getUserId()).ifPresent(buyer -> {
-            mergeStats(buyer, event.getItems(), event.getTotalAmount(), false);
-            userRepository.save(buyer);
-            log.info("Updated buyer stats for userId={}", event.getUserId());
-        });
-
-        userRepository.findById(event.getSellerId()).ifPresent(seller -> {
-            mergeStats(seller, event.getItems(), event.getTotalAmount(), true);
-            userRepository.save(seller);
-            log.info("Updated seller stats for sellerId={}", event.getSellerId());
-        });
+        handleOrderPlacedBatch(List.of(event));
     }
 
-    private void mergeStats(User user, List<OrderItemEvent> items, BigDecimal total, boolean isSeller) {
-        if (isSeller) {
-            user.setTotalRevenue(user.getTotalRevenue().add(total));
+    public void handleOrderPlacedBatch(List<OrderPlacedEvent> events) {
+        Map<String, OrderPlacedEvent> unique = new LinkedHashMap<>();
+        for (OrderPlacedEvent event : events) {
+            if (!isValid(event)) {
+                log.error("Skipping malformed order-placed event: orderId={}", event.getOrderId());
+                continue;
+            }
+            if (unique.putIfAbsent(event.getOrderId(), event) != null) {
+                log.warn("Skipping duplicate order-placed event in batch: orderId={}", event.getOrderId());
+            }
+        }
+
+        if (unique.isEmpty()) {
+            return;
+        }
+
+        try {
+            applyOnce(unique.values(), true);
+        } catch (DuplicateKeyException e) {
+            log.warn("Processed order ledger rejected a batch entry, re-checking all orders: {}", e.getMessage());
+            applyOnce(unique.values(), false);
+        }
+    }
+
+    private void applyOnce(Collection<OrderPlacedEvent> events, boolean trustLedgerFilter) {
+        List<String> keys = new ArrayList<>(events.size() * 2);
+        for (OrderPlacedEvent event : events) {
+            keys.add(ProcessedOrder.key(event.getOrderId(), event.getUserId()));
+            keys.add(ProcessedOrder.key(event.getOrderId(), event.getSellerId()));
+        }
+        Set<String> processed = processedOrderLedger.findProcessed(keys, trustLedgerFilter);
+
+        Map<String, UserStatsDelta> deltas = new LinkedHashMap<>();
+        for (OrderPlacedEvent event : events) {
+            log.info("Received order-placed event: orderId={}", event.getOrderId());
+
+            if (!processed.contains(ProcessedOrder.key(event.getOrderId(), event.getUserId()))) {
+                mergeStats(deltas.computeIfAbsent(event.getUserId(), UserStatsDelta::new),
+                        event, false);
+            }
+            if (!processed.contains(ProcessedOrder.key(event.getOrderId(), event.getSellerId()))) {
+                mergeStats(deltas.computeIfAbsent(event.getSellerId(), UserStatsDelta::new),
+                        event, true);
+            }
+        }
+
+        if (deltas.isEmpty()) {
+            log.info("All {} order-placed events were already applied, skipping", events.size());
+            return;
+        }
+
+        List<List<UserStatsDelta>> lanes = partitionByUser(deltas.values());
+        if (lanes.size() == 1) {
+            writeLane(lanes.getFirst());
         } else {
-            user.setTotalSpent(user.getTotalSpent().add(total));
+            writeLanesInParallel(lanes);
+        }
+        log.info("Updated stats for {} users from {} order-placed events", deltas.size(), events.size());
+    }
+
+    /**
+     * Splits deltas into lanes by userId hash. Each user's delta lands in exactly one lane, so
+     * its updates stay in event order while different lanes commit independently: the ledger is
+     * keyed per (orderId, userId), so a lane that fails can be retried without re-applying the
+     * lanes that committed.
+     */
+    private List<List<UserStatsDelta>> partitionByUser(Collection<UserStatsDelta> deltas) {
+        int laneCount = Math.max(1, Math.min(parallelism, deltas.size() / minUsersPerLane));
+        List<List<UserStatsDelta>> lanes = new ArrayList<>(laneCount);
+        for (int i = 0; i < laneCount; i++) {
+            lanes.add(new ArrayList<>());
+        }
+        for (UserStatsDelta delta : deltas) {
+            lanes.get(Math.floorMod(delta.getUserId().hashCode(), laneCount)).add(delta);
+        }
+        lanes.removeIf(List::isEmpty);
+        return lanes;
+    }
+
+    private void writeLanesInParallel(List<List<UserStatsDelta>> lanes) {
+        List<CompletableFuture<Void>> writes = lanes.stream()
+                .map(lane -> CompletableFuture.runAsync(() -> writeLane(lane), laneExecutor))
+                .toList();
+        try {
+            CompletableFuture.allOf(writes.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Lanes from concurrent batches that touch the same busy user conflict on its document, and
+     * Mongo aborts one of the transactions with a transient error. Those are retried here, with a
+     * short jittered delay, so only persistent failures send the batch to the retry topic.
+     */
+    private void writeLane(List<UserStatsDelta> deltas) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    processedOrderLedger.record(deltas);
+                    userRepository.incrementTotals(deltas);
+                    userProductStatRepository.incrementStats(deltas);
+                    topProductsService.refresh(deltas);
+                });
+                break;
+            } catch (DataAccessException | TransactionException e) {
+                if (attempt >= transactionAttempts || !isTransientTransactionError(e)) {
+                    throw e;
+                }
+                log.debug("Transient transaction error on attempt {} for {} users, retrying: {}",
+                        attempt, deltas.size(), e.getMessage());
+                pauseBeforeRetry(attempt, e);
+            }
+        }
+        processedOrderLedger.remember(deltas);
+    }
+
+    private static boolean isTransientTransactionError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException) {
+                return true;
+            }
+            if (cause instanceof MongoException mongo
+                    && (mongo.hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL)
+                    || mongo.hasErrorLabel(MongoException.UNKNOWN_TRANSACTION_COMMIT_RESULT_LABEL))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void pauseBeforeRetry(int attempt, RuntimeException failure) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(transactionRetryDelayMs * attempt + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw failure;
         }
+    }
+
+    private boolean isValid(OrderPlacedEvent event) {
+        return event.getOrderId() != null
+                && event.getUserId() != null
+                && event.getSellerId() != null
+                && event.getTotalAmount() != null
+                && event.getItems() != null
+                && event.getItems().stream().allMatch(item -> item.getProductId() != null && item.getPrice() != null);
+    }
 
-        if (user.getProductStats() == null) {
-            user.setProductStats(new ArrayList<>());
+    private void mergeStats(UserStatsDelta delta, OrderPlacedEvent event, boolean isSeller) {
+        delta.getOrderIds().add(event.getOrderId());
+
+        if (isSeller) {
+            delta.setSeller(true);
+            delta.setRevenue(delta.getRevenue().add(event.getTotalAmount()));
+        } else {
+            delta.setBuyer(true);
+            delta.setSpent(delta.getSpent().add(event.getTotalAmount()));
         }
 
-        for (OrderItemEvent item : items) {
+        for (OrderItemEvent item : event.getItems()) {
             BigDecimal lineTotal = item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity()));
-            user.getProductStats().stream()
-                    .filter(s -> s.getProductId().equals(item.getProductId()))
-                    .findFirst()
-                    .ifPresentOrElse(
-                            s -> {
-                                s.setTotalQuantity(s.getTotalQuantity() + item.getQuantity());
-                                s.setTotalAmount(s.getTotalAmount().add(lineTotal));
-                            },
-                            () -> user.getProductStats().add(
-                                    new ProductStat(item.getProductId(), item.getProductName(),
-                                            item.getQuantity(), lineTotal))
-                    );
+            delta.addProduct(item.getProductId(), item.getProductName(), item.getQuantity(), lineTotal);
         }
     }
-}
\ No newline at end of file
+}
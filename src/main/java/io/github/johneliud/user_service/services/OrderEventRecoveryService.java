@@ -0,0 +1,89 @@
+package io.github.johneliud.user_service.services;
+
+import io.github.johneliud.user_service.dto.OrderPlacedEvent;
+import io.github.johneliud.user_service.dto.ReplayResponse;
+import io.github.johneliud.user_service.models.ParkedOrderEvent;
+import io.github.johneliud.user_service.repositories.ParkedOrderEventRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.core.log.LogAccessor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OrderEventRecoveryService {
+    public static final String ORDER_PLACED_TOPIC = "order-placed";
+    public static final String ORDER_PLACED_RETRY_TOPIC = "order-placed-retry";
+
+    private final ParkedOrderEventRepository parkedOrderEventRepository;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private static final LogAccessor LOG_ACCESSOR = new LogAccessor(OrderEventRecoveryService.class);
+
+    public void park(String key, String payload, String reason, String sourceTopic) {
+        parkedOrderEventRepository.save(new ParkedOrderEvent(null, key, payload, reason, sourceTopic, Instant.now()));
+        log.warn("Parked order event from {}: {}", sourceTopic, reason);
+    }
+
+    /**
+     * Parks a record as received: decoded values are stored as JSON, undecodable ones with the
+     * raw bytes kept by the deserializer.
+     */
+    public void park(ConsumerRecord<?, ?> record, String reason) {
+        String payload;
+        if (record.value() == null) {
+            DeserializationException failure = SerializationUtils.getExceptionFromHeader(
+                    record, SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER, LOG_ACCESSOR);
+            payload = failure == null || failure.getData() == null
+                    ? null
+                    : new String(failure.getData(), StandardCharsets.UTF_8);
+        } else if (record.value() instanceof String text) {
+            payload = text;
+        } else {
+            payload = objectMapper.writeValueAsString(record.value());
+        }
+        park(Objects.toString(record.key(), null), payload, reason, record.topic());
+    }
+
+    /**
+     * Hands records off to the retry topic, whose listener retries them with exponential
+     * back-off on its own partitions, so the main partition keeps moving.
+     */
+    public void forwardForRetry(List<ConsumerRecord<String, OrderPlacedEvent>> records) {
+        List<CompletableFuture<?>> sends = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, OrderPlacedEvent> record : records) {
+            sends.add(kafkaTemplate.send(ORDER_PLACED_RETRY_TOPIC, record.key(),
+                    objectMapper.writeValueAsString(record.value())));
+        }
+        CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).join();
+        log.info("Forwarded {} order events to {}", records.size(), ORDER_PLACED_RETRY_TOPIC);
+    }
+
+    public ReplayResponse replayParked(int limit) {
+        List<ParkedOrderEvent> parked = parkedOrderEventRepository.findAllByOrderByParkedAtAsc(PageRequest.of(0, limit));
+
+        List<CompletableFuture<?>> sends = new ArrayList<>(parked.size());
+        for (ParkedOrderEvent event : parked) {
+            sends.add(kafkaTemplate.send(ORDER_PLACED_TOPIC, event.getKey(), event.getPayload()));
+        }
+        CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).join();
+        parkedOrderEventRepository.deleteAll(parked);
+
+        log.info("Replayed {} parked order events to {}", parked.size(), ORDER_PLACED_TOPIC);
+        return new ReplayResponse(parked.size(), parkedOrderEventRepository.count());
+    }
+}
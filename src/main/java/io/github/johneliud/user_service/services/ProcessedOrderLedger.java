@@ -0,0 +1,128 @@
+package io.github.johneliud.user_service.services;
+
+import io.github.johneliud.user_service.models.ProcessedOrder;
+import io.github.johneliud.user_service.models.UserStatsDelta;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Records which (orderId, userId) pairs have already been applied to user stats. The
+ * {@code processed_orders} collection is the source of truth: its unique _id rejects a second
+ * application inside the stats transaction. An in-memory Bloom filter, warmed from the
+ * collection on startup, lets the common case of never-seen orders skip the ledger lookup.
+ *
+ * <p>A Bloom filter cannot forget, while ledger entries expire after 7 days, so the filter is
+ * rebuilt from the collection every {@code stats.ledger.bloom.rebuild-interval-ms} and its
+ * false-positive rate stays near the configured one on a long-running instance. Keys remembered
+ * during a rebuild go into both filters, so the swap never loses one.
+ */
+@Service
+@Slf4j
+public class ProcessedOrderLedger implements ApplicationRunner {
+    private final MongoTemplate mongoTemplate;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private volatile BloomFilter seenKeys;
+    private volatile BloomFilter rebuilding;
+
+    public ProcessedOrderLedger(MongoTemplate mongoTemplate,
+                                @Value("${stats.ledger.bloom.expected-insertions:2000000}") long expectedInsertions,
+                                @Value("${stats.ledger.bloom.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.mongoTemplate = mongoTemplate;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.seenKeys = new BloomFilter(expectedInsertions, falsePositiveRate);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        rebuildFilter();
+    }
+
+    @Scheduled(initialDelayString = "${stats.ledger.bloom.rebuild-interval-ms:86400000}",
+            fixedDelayString = "${stats.ledger.bloom.rebuild-interval-ms:86400000}")
+    public synchronized void rebuildFilter() {
+        BloomFilter next = new BloomFilter(expectedInsertions, falsePositiveRate);
+        rebuilding = next;
+        try {
+            Query all = new Query();
+            all.fields().include("_id");
+
+            long loaded = 0;
+            try (Stream<ProcessedOrder> entries = mongoTemplate.stream(all, ProcessedOrder.class)) {
+                for (ProcessedOrder entry : (Iterable<ProcessedOrder>) entries::iterator) {
+                    next.put(entry.getId());
+                    loaded++;
+                }
+            }
+            seenKeys = next;
+            log.info("Loaded {} processed order keys into the ledger filter", loaded);
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    /**
+     * Returns the keys already present in the ledger. When {@code trustFilter} is set, keys the
+     * Bloom filter has never seen are assumed new; callers must retry with it unset if the
+     * ledger later rejects one of them as a duplicate.
+     */
+    public Set<String> findProcessed(Collection<String> keys, boolean trustFilter) {
+        BloomFilter filter = seenKeys;
+        List<String> candidates = trustFilter
+                ? keys.stream().filter(filter::mightContain).toList()
+                : new ArrayList<>(keys);
+        if (candidates.isEmpty()) {
+            return Set.of();
+        }
+
+        Query query = Query.query(Criteria.where("_id").in(candidates));
+        query.fields().include("_id");
+        Set<String> processed = new HashSet<>();
+        for (ProcessedOrder entry : mongoTemplate.find(query, ProcessedOrder.class)) {
+            processed.add(entry.getId());
+        }
+        return processed;
+    }
+
+    public void record(Collection<UserStatsDelta> deltas) {
+        Instant now = Instant.now();
+        List<ProcessedOrder> entries = new ArrayList<>();
+        for (UserStatsDelta delta : deltas) {
+            for (String orderId : delta.getOrderIds()) {
+                entries.add(new ProcessedOrder(ProcessedOrder.key(orderId, delta.getUserId()),
+                        orderId, delta.getUserId(), now));
+            }
+        }
+        mongoTemplate.insert(entries, ProcessedOrder.class);
+    }
+
+    public void remember(Collection<UserStatsDelta> deltas) {
+        BloomFilter current = seenKeys;
+        BloomFilter next = rebuilding;
+        for (UserStatsDelta delta : deltas) {
+            for (String orderId : delta.getOrderIds()) {
+                String key = ProcessedOrder.key(orderId, delta.getUserId());
+                current.put(key);
+                if (next != null) {
+                    next.put(key);
+                }
+            }
+        }
+    }
+}
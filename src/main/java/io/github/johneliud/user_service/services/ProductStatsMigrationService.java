@@ -0,0 +1,117 @@
+package io.github.johneliud.user_service.services;
+
+import io.github.johneliud.user_service.models.ProductStatSort;
+import io.github.johneliud.user_service.models.UserProductStat;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Moves the legacy embedded {@code users.productStats} arrays into the
+ * {@code user_product_stats} collection. Runs on startup and is safe to re-run: each user's
+ * array is claimed with $unset and copied with $inc in one transaction, so a failed copy or a
+ * crash leaves the array in place for the next run, and a committed copy can never be applied
+ * twice. $inc merges with stats the consumer may already have written for that user.
+ *
+ * <p>The Kafka listeners start before this runs, so a user's top products lists may already
+ * have been built from a partly migrated collection. The claim removes them too: reads fall
+ * back to the collection until the next order for the user rebuilds them from complete rows.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductStatsMigrationService implements ApplicationRunner {
+    private static final String USERS_COLLECTION = "users";
+    private static final String EMBEDDED_FIELD = "productStats";
+
+    private final MongoTemplate mongoTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${stats.migration.enabled:true}")
+    private boolean enabled;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            migrate();
+        }
+    }
+
+    public long migrate() {
+        Query pending = Query.query(Criteria.where(EMBEDDED_FIELD).exists(true));
+        pending.fields().include("_id");
+
+        long migratedUsers = 0;
+        try (Stream<Document> ids = mongoTemplate.stream(pending, Document.class, USERS_COLLECTION)) {
+            Iterator<Document> iterator = ids.iterator();
+            while (iterator.hasNext()) {
+                Object id = iterator.next().get("_id");
+                if (Boolean.TRUE.equals(transactionTemplate.execute(status -> migrateUser(id)))) {
+                    migratedUsers++;
+                }
+            }
+        }
+
+        if (migratedUsers > 0) {
+            log.info("Migrated embedded product stats for {} users", migratedUsers);
+        }
+        return migratedUsers;
+    }
+
+    private boolean migrateUser(Object id) {
+        Document claimed = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(id).and(EMBEDDED_FIELD).exists(true)),
+                // The top lists may have been built from rows not migrated yet; drop them to be rebuilt lazily
+                new Update().unset(EMBEDDED_FIELD)
+                        .unset(ProductStatSort.QUANTITY.getTopProductsField())
+                        .unset(ProductStatSort.AMOUNT.getTopProductsField()),
+                Document.class,
+                USERS_COLLECTION);
+        if (claimed == null) {
+            return false;
+        }
+        copyStats(id.toString(), claimed.getList(EMBEDDED_FIELD, Document.class));
+        return true;
+    }
+
+    private void copyStats(String userId, List<Document> stats) {
+        if (stats == null || stats.isEmpty()) {
+            return;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserProductStat.class);
+        for (Document stat : stats) {
+            bulk.upsert(
+                    Query.query(Criteria.where("userId").is(userId)
+                            .and("productId").is(stat.getString("productId"))),
+                    new Update()
+                            .inc("totalQuantity", stat.getInteger("totalQuantity", 0))
+                            .inc("totalAmount", toBigDecimal(stat.get("totalAmount")))
+                            .setOnInsert("productName", stat.getString("productName")));
+        }
+        bulk.execute();
+    }
+
+    private BigDecimal toBigDecimal(Object value) {
+        if (value instanceof Decimal128 decimal) {
+            return decimal.bigDecimalValue();
+        }
+        return value == null ? BigDecimal.ZERO : new BigDecimal(value.toString());
+    }
+}
@@ -0,0 +1,12 @@
+package io.github.johneliud.user_service.services;
+
+import java.util.function.Consumer;
+
+/**
+ * Fans profile invalidations out to every node's {@link UserProfileCache}.
+ */
+public interface ProfileInvalidationBus {
+    void publish(String userId);
+
+    void subscribe(Consumer<String> listener);
+}
@@ -0,0 +1,206 @@
+package io.github.johneliud.user_service.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Stores avatars in an S3 bucket, so every node serves the same files without shared disk.
+ * Works with any S3-compatible endpoint: set {@code avatar.store.s3.endpoint} and
+ * {@code avatar.store.s3.path-style=true} for MinIO. Credentials come from the static keys if
+ * set, otherwise from the default AWS provider chain.
+ */
+@Component
+@ConditionalOnProperty(name = "avatar.store.type", havingValue = "s3")
+public class S3AvatarStore implements AvatarStore {
+    private static final int NOT_FOUND = 404;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String keyPrefix;
+
+    @Autowired
+    public S3AvatarStore(@Value("${avatar.store.s3.bucket}") String bucket,
+                         @Value("${avatar.store.s3.prefix:avatars/}") String keyPrefix,
+                         @Value("${avatar.store.s3.region:us-east-1}") String region,
+                         @Value("${avatar.store.s3.endpoint:}") String endpoint,
+                         @Value("${avatar.store.s3.path-style:false}") boolean pathStyle,
+                         @Value("${avatar.store.s3.access-key:}") String accessKey,
+                         @Value("${avatar.store.s3.secret-key:}") String secretKey) {
+        this(buildClient(region, endpoint, pathStyle, accessKey, secretKey), bucket, keyPrefix);
+    }
+
+    S3AvatarStore(S3Client s3, String bucket, String keyPrefix) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.keyPrefix = keyPrefix;
+    }
+
+    private static S3Client buildClient(String region, String endpoint, boolean pathStyle,
+                                        String accessKey, String secretKey) {
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .forcePathStyle(pathStyle);
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        if (!accessKey.isBlank()) {
+            builder.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)));
+        }
+        return builder.build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        s3.close();
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) throws IOException {
+        try {
+            HeadObjectResponse head = s3.headObject(HeadObjectRequest.builder()
+                    .bucket(bucket).key(objectKey(key)).build());
+            return Optional.of(new StoredObject(head.contentLength(), head.lastModified(),
+                    new S3ObjectResource(key, head.contentLength(), head.lastModified()), null));
+        } catch (S3Exception e) {
+            if (e.statusCode() == NOT_FOUND) {
+                return Optional.empty();
+            }
+            throw new IOException("Failed to stat avatar object: " + key, e);
+        } catch (SdkException e) {
+            throw new IOException("Failed to stat avatar object: " + key, e);
+        }
+    }
+
+    @Override
+    public void put(String key, Path source) throws IOException {
+        try {
+            s3.putObject(PutObjectRequest.builder()
+                    .bucket(bucket).key(objectKey(key)).contentType(contentType(key)).build(),
+                    RequestBody.fromFile(source));
+        } catch (SdkException e) {
+            throw new IOException("Failed to upload avatar object: " + key, e);
+        }
+        Files.deleteIfExists(source);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(bucket).key(objectKey(key)).build());
+        } catch (SdkException e) {
+            throw new IOException("Failed to delete avatar object: " + key, e);
+        }
+    }
+
+    /** S3 has no rename; this is a server-side copy followed by a delete of the source. */
+    @Override
+    public boolean move(String fromKey, String toKey) throws IOException {
+        try {
+            s3.copyObject(CopyObjectRequest.builder()
+                    .sourceBucket(bucket).sourceKey(objectKey(fromKey))
+                    .destinationBucket(bucket).destinationKey(objectKey(toKey))
+                    .build());
+        } catch (S3Exception e) {
+            if (e.statusCode() == NOT_FOUND) {
+                return false;
+            }
+            throw new IOException("Failed to move avatar object: " + fromKey, e);
+        } catch (SdkException e) {
+            throw new IOException("Failed to move avatar object: " + fromKey, e);
+        }
+        delete(fromKey);
+        return true;
+    }
+
+    private String objectKey(String key) {
+        return keyPrefix + key;
+    }
+
+    private static String contentType(String key) {
+        String extension = key.substring(key.lastIndexOf('.') + 1).toLowerCase();
+        return switch (extension) {
+            case "png" -> "image/png";
+            case "jpg", "jpeg" -> "image/jpeg";
+            case "webp" -> "image/webp";
+            default -> "application/octet-stream";
+        };
+    }
+
+    /**
+     * Opens a new GET per {@link #getInputStream()}; size and modification time come from the
+     * HEAD already made, so serving costs one extra round trip only when the body is sent.
+     */
+    private final class S3ObjectResource extends AbstractResource {
+        private final String key;
+        private final long size;
+        private final Instant lastModified;
+
+        private S3ObjectResource(String key, long size, Instant lastModified) {
+            this.key = key;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            try {
+                return s3.getObject(GetObjectRequest.builder()
+                        .bucket(bucket).key(objectKey(key)).build());
+            } catch (SdkException e) {
+                throw new IOException("Failed to read avatar object: " + key, e);
+            }
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public long contentLength() {
+            return size;
+        }
+
+        @Override
+        public long lastModified() {
+            return lastModified.toEpochMilli();
+        }
+
+        @Override
+        public String getFilename() {
+            return key.substring(key.lastIndexOf('/') + 1);
+        }
+
+        @Override
+        public String getDescription() {
+            return "S3 object [" + bucket + "/" + objectKey(key) + "]";
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.johneliud.user_service.services;
+
+import io.github.johneliud.user_service.models.ProductStat;
+import io.github.johneliud.user_service.models.ProductStatSort;
+import io.github.johneliud.user_service.models.UserProductStat;
+import io.github.johneliud.user_service.models.UserStatsDelta;
+import io.github.johneliud.user_service.repositories.UserProductStatRepository;
+import io.github.johneliud.user_service.repositories.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Maintains the per-user top products lists stored on the user document: by quantity for
+ * buyers and by amount for sellers.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TopProductsService {
+    private final UserRepository userRepository;
+    private final UserProductStatRepository userProductStatRepository;
+
+    @Value("${stats.top-products.size:10}")
+    private int size;
+
+    public void refresh(Collection<UserStatsDelta> deltas) {
+        refresh(deltas.stream().filter(UserStatsDelta::isBuyer).toList(), ProductStatSort.QUANTITY);
+        refresh(deltas.stream().filter(UserStatsDelta::isSeller).toList(), ProductStatSort.AMOUNT);
+    }
+
+    private void refresh(List<UserStatsDelta> deltas, ProductStatSort sort) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<ProductStat>> updated = userProductStatRepository.findUpdatedStats(deltas).stream()
+                .collect(Collectors.groupingBy(UserProductStat::getUserId,
+                        Collectors.mapping(UserProductStat::toProductStat, Collectors.toList())));
+        userRepository.mergeTopProducts(updated, sort, size);
+
+        List<String> userIds = deltas.stream().map(UserStatsDelta::getUserId).toList();
+        for (String userId : userRepository.findIdsWithoutTopProducts(userIds, sort)) {
+            List<ProductStat> top = userProductStatRepository.findTopStats(userId, sort, 0, size).stream()
+                    .map(UserProductStat::toProductStat)
+                    .toList();
+            userRepository.initTopProducts(userId, sort, top);
+            log.info("Initialised {} for user: {}", sort.getTopProductsField(), userId);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package io.github.johneliud.user_service.services;
+
+import com.mongodb.bulk.BulkWriteError;
+import io.github.johneliud.user_service.dto.ImportRowResult;
+import io.github.johneliud.user_service.dto.ImportRowResult.Status;
+import io.github.johneliud.user_service.dto.RegisterRequest;
+import io.github.johneliud.user_service.exception.ServiceUnavailableException;
+import io.github.johneliud.user_service.models.Role;
+import io.github.johneliud.user_service.models.User;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Streams users in from NDJSON or CSV and writes one NDJSON result per input row. Rows are
+ * handled in batches of {@code import.batch-size}, so memory stays flat however large the
+ * file is: each batch is validated, hashed in parallel, inserted with one unordered bulk
+ * insert, and its results flushed before the next batch is read. Lines are read with a cap of
+ * {@code import.max-line-length} characters, so a file without line breaks cannot exhaust the heap.
+ */
+@Service
+@Slf4j
+public class UserImportService {
+    public enum Format { NDJSON, CSV }
+
+    private static final int DUPLICATE_KEY = 11000;
+    private static final int MAX_HASH_ATTEMPTS = 50;
+    private static final long HASH_RETRY_DELAY_MS = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final PasswordEncoder passwordEncoder;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int maxLineLength;
+    private final Semaphore hashPermits;
+    private final ExecutorService hashExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public UserImportService(MongoTemplate mongoTemplate,
+                             PasswordEncoder passwordEncoder,
+                             Validator validator,
+                             ObjectMapper objectMapper,
+                             @Value("${import.batch-size:500}") int batchSize,
+                             @Value("${import.hashing.parallelism:2}") int hashingParallelism,
+                             @Value("${import.max-line-length:8192}") int maxLineLength) {
+        this.mongoTemplate = mongoTemplate;
+        this.passwordEncoder = passwordEncoder;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxLineLength = maxLineLength;
+        this.hashPermits = new Semaphore(hashingParallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashExecutor.close();
+    }
+
+    public void importUsers(InputStream body, Format format, OutputStream out) throws IOException {
+        LineReader reader = new LineReader(
+                new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)), maxLineLength);
+        long lineNumber = 0;
+        CsvColumns columns = null;
+        if (format == Format.CSV) {
+            String header = reader.readLine();
+            lineNumber++;
+            if (header == null) {
+                throw new IllegalArgumentException("CSV header is required");
+            }
+            if (reader.truncated()) {
+                throw new IllegalArgumentException("CSV header exceeds " + maxLineLength + " characters");
+            }
+            columns = CsvColumns.parse(header);
+        }
+
+        List<PendingRow> batch = new ArrayList<>(batchSize);
+        Map<Status, Integer> totals = new HashMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (reader.truncated()) {
+                write(out, new ImportRowResult(lineNumber, null, Status.INVALID, null,
+                        "Row exceeds " + maxLineLength + " characters"), totals);
+                continue;
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+
+            RegisterRequest request;
+            try {
+                request = columns != null ? columns.toRequest(line) : objectMapper.readValue(line, RegisterRequest.class);
+            } catch (RuntimeException e) {
+                write(out, new ImportRowResult(lineNumber, null, Status.INVALID, null, "Malformed row: " + e.getMessage()), totals);
+                continue;
+            }
+            // A literal null deserializes without error; arrays and scalars already fail above
+            if (request == null) {
+                write(out, new ImportRowResult(lineNumber, null, Status.INVALID, null, "Row must be a JSON object"), totals);
+                continue;
+            }
+
+            Set<ConstraintViolation<RegisterRequest>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                String error = violations.stream().map(ConstraintViolation::getMessage).sorted()
+                        .collect(Collectors.joining("; "));
+                write(out, new ImportRowResult(lineNumber, request.getEmail(), Status.INVALID, null, error), totals);
+                continue;
+            }
+            if (request.getRole() == Role.ADMIN) {
+                write(out, new ImportRowResult(lineNumber, request.getEmail(), Status.INVALID, null,
+                        "Admin accounts cannot be imported"), totals);
+                continue;
+            }
+
+            batch.add(new PendingRow(lineNumber, request));
+            if (batch.size() == batchSize) {
+                insertBatch(batch, out, totals);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            insertBatch(batch, out, totals);
+        }
+        out.flush();
+        log.info("User import finished after {} lines: {}", lineNumber, totals);
+    }
+
+    private void insertBatch(List<PendingRow> batch, OutputStream out, Map<Status, Integer> totals) throws IOException {
+        List<CompletableFuture<String>> hashes = new ArrayList<>(batch.size());
+        for (PendingRow row : batch) {
+            hashes.add(CompletableFuture.supplyAsync(() -> hash(row.request().getPassword()), hashExecutor));
+        }
+
+        ImportRowResult[] results = new ImportRowResult[batch.size()];
+        List<User> users = new ArrayList<>(batch.size());
+        List<Integer> userRows = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            PendingRow row = batch.get(i);
+            try {
+                User user = toUser(row.request(), hashes.get(i).join());
+                users.add(user);
+                userRows.add(i);
+                results[i] = new ImportRowResult(row.line(), user.getEmail(), Status.CREATED, user.getId(), null);
+            } catch (CompletionException e) {
+                results[i] = new ImportRowResult(row.line(), row.request().getEmail(), Status.FAILED, null,
+                        e.getCause().getMessage());
+            }
+        }
+
+        if (!users.isEmpty()) {
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class).insert(users).execute();
+            } catch (BulkOperationException e) {
+                for (BulkWriteError error : e.getErrors()) {
+                    int i = userRows.get(error.getIndex());
+                    results[i] = error.getCode() == DUPLICATE_KEY
+                            ? new ImportRowResult(batch.get(i).line(), results[i].getEmail(), Status.DUPLICATE, null, "Email already registered")
+                            : new ImportRowResult(batch.get(i).line(), results[i].getEmail(), Status.FAILED, null, error.getMessage());
+                }
+            }
+        }
+
+        for (ImportRowResult result : results) {
+            write(out, result, totals);
+        }
+        out.flush();
+    }
+
+    /**
+     * Shares the login hashing pool but caps how much of it an import may hold, and backs off
+     * when the pool is full so interactive logins keep priority.
+     */
+    private String hash(String rawPassword) {
+        hashPermits.acquireUninterruptibly();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return passwordEncoder.encode(rawPassword);
+                } catch (ServiceUnavailableException e) {
+                    if (attempt == MAX_HASH_ATTEMPTS) {
+                        throw e;
+                    }
+                    Thread.sleep(HASH_RETRY_DELAY_MS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Import interrupted");
+        } finally {
+            hashPermits.release();
+        }
+    }
+
+    private User toUser(RegisterRequest request, String passwordHash) {
+        User user = new User();
+        // Ids are assigned up front so results can report them without reading inserts back
+        user.setId(new ObjectId().toHexString());
+        user.setName(request.getName());
+        user.setEmail(request.getEmail());
+        user.setPassword(passwordHash);
+        user.setRole(request.getRole());
+        return user;
+    }
+
+    private void write(OutputStream out, ImportRowResult result, Map<Status, Integer> totals) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(result));
+        out.write('\n');
+        totals.merge(result.getStatus(), 1, Integer::sum);
+    }
+
+    private record PendingRow(long line, RegisterRequest request) {
+    }
+
+    /**
+     * Reads lines like {@link BufferedReader#readLine()}, but keeps at most {@code maxLength}
+     * characters of each. The rest of an overlong line is skipped and {@link #truncated()} is set.
+     */
+    private static final class LineReader {
+        private final Reader reader;
+        private final int maxLength;
+        private final StringBuilder line = new StringBuilder();
+        private boolean skipLineFeed;
+        private boolean truncated;
+
+        LineReader(Reader reader, int maxLength) {
+            this.reader = reader;
+            this.maxLength = maxLength;
+        }
+
+        String readLine() throws IOException {
+            line.setLength(0);
+            truncated = false;
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (skipLineFeed) {
+                    skipLineFeed = false;
+                    if (c == '\n') {
+                        continue;
+                    }
+                }
+                if (c == '\n' || c == '\r') {
+                    skipLineFeed = c == '\r';
+                    return line.toString();
+                }
+                if (line.length() < maxLength) {
+                    line.append((char) c);
+                } else {
+                    truncated = true;
+                }
+            }
+            return line.isEmpty() && !truncated ? null : line.toString();
+        }
+
+        boolean truncated() {
+            return truncated;
+        }
+    }
+
+    /**
+     * Maps the CSV header to column positions. Fields may be quoted, with doubled quotes for a
+     * literal quote; a row must fit on one line.
+     */
+    private record CsvColumns(int name, int email, int password, int role) {
+        static CsvColumns parse(String header) {
+            List<String> names = split(header).stream().map(String::trim).map(String::toLowerCase).toList();
+            return new CsvColumns(indexOf(names, "name"), indexOf(names, "email"),
+                    indexOf(names, "password"), indexOf(names, "role"));
+        }
+
+        private static int indexOf(List<String> names, String column) {
+            int index = names.indexOf(column);
+            if (index < 0) {
+                throw new IllegalArgumentException("CSV header is missing column: " + column);
+            }
+            return index;
+        }
+
+        RegisterRequest toRequest(String line) {
+            List<String> fields = split(line);
+            RegisterRequest request = new RegisterRequest();
+            request.setName(field(fields, name));
+            request.setEmail(field(fields, email));
+            request.setPassword(field(fields, password));
+            String roleValue = field(fields, role);
+            request.setRole(roleValue == null || roleValue.isBlank() ? null : Role.fromString(roleValue.trim()));
+            return request;
+        }
+
+        private static String field(List<String> fields, int index) {
+            return index < fields.size() ? fields.get(index) : null;
+        }
+
+        static List<String> split(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        current.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(current.toString());
+                    current.setLength(0);
+                } else {
+                    current.append(c);
+                }
+            }
+            if (quoted) {
+                throw new IllegalArgumentException("Unterminated quoted field");
+            }
+            fields.add(current.toString());
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package io.github.johneliud.user_service.services;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.johneliud.user_service.dto.UserResponse;
+import io.github.johneliud.user_service.exception.ServiceUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of profile responses. Writers call {@link #invalidate}, which evicts
+ * locally and on every other node via the {@link ProfileInvalidationBus}; the TTL bounds how
+ * long a missed invalidation can serve a stale profile.
+ *
+ * <p>Entries are futures, so concurrent misses for the same user share a single in-flight load
+ * (single-flight): the first caller runs it on its own thread and the rest wait on its future,
+ * up to {@code profile.cache.load-timeout}. A failed load fails every waiter and is dropped
+ * from the cache, so the next request retries. A single lookup that joins a batch load which
+ * did not find the id loads it itself, so a missing user is always reported by the loader.
+ */
+@Component
+public class UserProfileCache {
+    private final AsyncCache<String, UserResponse> profiles;
+    private final ProfileInvalidationBus invalidationBus;
+    private final long loadTimeoutNanos;
+
+    public UserProfileCache(ProfileInvalidationBus invalidationBus,
+                            MeterRegistry meterRegistry,
+                            @Value("${profile.cache.ttl:10m}") Duration ttl,
+                            @Value("${profile.cache.maximum-size:50000}") long maximumSize,
+                            @Value("${profile.cache.load-timeout:5s}") Duration loadTimeout) {
+        this.invalidationBus = invalidationBus;
+        this.loadTimeoutNanos = loadTimeout.toNanos();
+        this.profiles = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maximumSize)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, profiles.synchronous(), "user.profiles");
+        invalidationBus.subscribe(profiles.synchronous()::invalidate);
+    }
+
+    public UserResponse get(String userId, Function<String, UserResponse> loader) {
+        CompletableFuture<UserResponse> pending = new CompletableFuture<>();
+        // Only installs the empty future under the map's lock; the load itself runs outside it
+        CompletableFuture<UserResponse> future = profiles.get(userId, (id, executor) -> pending);
+        if (future == pending) {
+            complete(pending, () -> loader.apply(userId));
+            return await(future);
+        }
+
+        UserResponse profile = await(future);
+        // A batch completes ids it did not find with null; load directly so the loader reports the miss
+        return profile != null ? profile : loader.apply(userId);
+    }
+
+    /**
+     * Returns the cached profiles and loads all misses with one call to {@code loader}. Ids the
+     * loader does not return are left out of the result and are not cached. Ids already being
+     * loaded by another request are awaited rather than loaded again; if that load fails, e.g. a
+     * single lookup of an id that does not exist, the id is left out too instead of failing the
+     * whole batch. A failure of this call's own load is thrown.
+     */
+    public Map<String, UserResponse> getAll(Collection<String> userIds,
+                                            Function<Set<? extends String>, Map<String, UserResponse>> loader) {
+        Map<String, CompletableFuture<UserResponse>> futures = new LinkedHashMap<>();
+        Map<String, CompletableFuture<UserResponse>> owned = new LinkedHashMap<>();
+        for (String userId : userIds) {
+            CompletableFuture<UserResponse> pending = new CompletableFuture<>();
+            CompletableFuture<UserResponse> future = profiles.get(userId, (id, executor) -> pending);
+            futures.put(userId, future);
+            if (future == pending) {
+                owned.put(userId, pending);
+            }
+        }
+
+        if (!owned.isEmpty()) {
+            Map<String, UserResponse> loaded;
+            try {
+                loaded = loader.apply(owned.keySet());
+            } catch (Throwable e) {
+                owned.values().forEach(future -> future.completeExceptionally(e));
+                throw e;
+            }
+            // A future completed with null is dropped from the cache, so absent ids are not cached
+            owned.forEach((userId, future) -> future.complete(loaded.get(userId)));
+        }
+
+        long deadline = System.nanoTime() + loadTimeoutNanos;
+        Map<String, UserResponse> found = new HashMap<>();
+        for (Map.Entry<String, CompletableFuture<UserResponse>> entry : futures.entrySet()) {
+            UserResponse profile = awaitOrMiss(entry.getValue(), deadline);
+            if (profile != null) {
+                found.put(entry.getKey(), profile);
+            }
+        }
+        return found;
+    }
+
+    public void invalidate(String userId) {
+        profiles.synchronous().invalidate(userId);
+        invalidationBus.publish(userId);
+    }
+
+    private static <T> void complete(CompletableFuture<T> future, Supplier<T> load) {
+        try {
+            future.complete(load.get());
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private UserResponse awaitOrMiss(CompletableFuture<UserResponse> future, long deadline) {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            return null;
+        } catch (TimeoutException e) {
+            throw new ServiceUnavailableException("Timed out waiting for user profiles");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while waiting for user profiles");
+        }
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(loadTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new ServiceUnavailableException("Timed out waiting for user profile");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException("Interrupted while waiting for user profile");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -2,17 +2,33 @@ package io.github.johneliud.user_service.services;
 
 import io.github.johneliud.user_service.dto.*;
 import io.github.johneliud.user_service.models.ProductStat;
+import io.github.johneliud.user_service.models.ProductStatSort;
 import io.github.johneliud.user_service.models.Role;
 import io.github.johneliud.user_service.models.User;
+import io.github.johneliud.user_service.models.UserProductStat;
+import io.github.johneliud.user_service.repositories.ProductStatCursor;
+import io.github.johneliud.user_service.repositories.UserProductStatRepository;
 import io.github.johneliud.user_service.repositories.UserRepository;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 @RequiredArgsConstructor
@@ -21,42 +37,104 @@ public class UserService {
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
     private final FileStorageService fileStorageService;
+    private final UserProductStatRepository userProductStatRepository;
+    private final UserProfileCache userProfileCache;
+    private final ExecutorService avatarExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
+    @Value("${stats.top-products.size:10}")
+    private int topProductsSize;
+
+    /**
+     * Relies on the unique email index instead of checking first. The avatar is staged while the
+     * password is hashed and only committed once the insert succeeds, so a rejected registration
+     * never leaves a file behind; a failure waits for staging to finish before discarding it.
+     */
     public UserResponse registerUser(RegisterRequest request, MultipartFile avatar) {
         log.info("Attempting to register user with email: {}", request.getEmail());
 
-        if (userRepository.existsByEmail(request.getEmail())) {
-            log.warn("Registration failed: Email already exists - {}", request.getEmail());
-            throw new IllegalArgumentException("Email already registered");
+        if (request.getRole() == Role.ADMIN) {
+            log.warn("Registration failed: Admin role requested for {}", request.getEmail());
+            throw new IllegalArgumentException("Admin accounts cannot be registered");
         }
 
-        if (avatar != null && !avatar.isEmpty() && request.getRole() != Role.SELLER) {
+        boolean hasAvatar = avatar != null && !avatar.isEmpty();
+        if (hasAvatar && request.getRole() != Role.SELLER) {
             log.warn("Registration failed: Only sellers can upload avatars");
             throw new IllegalArgumentException("Only sellers can upload avatars");
         }
 
+        CompletableFuture<FileStorageService.StagedAvatar> stagedAvatar = hasAvatar
+                ? CompletableFuture.supplyAsync(() -> fileStorageService.stageAvatar(avatar), avatarExecutor)
+                : CompletableFuture.completedFuture(null);
+
         User user = new User();
         user.setName(request.getName());
         user.setEmail(request.getEmail());
-        user.setPassword(passwordEncoder.encode(request.getPassword()));
         user.setRole(request.getRole());
 
-        if (avatar != null && !avatar.isEmpty()) {
-            String avatarPath = fileStorageService.storeAvatar(avatar);
-            user.setAvatar(avatarPath);
-            log.info("Avatar uploaded for user: {}", avatarPath);
+        User savedUser;
+        FileStorageService.StagedAvatar staged;
+        try {
+            user.setPassword(passwordEncoder.encode(request.getPassword()));
+            staged = awaitStagedAvatar(stagedAvatar);
+            user.setAvatar(staged != null ? staged.filename() : null);
+            savedUser = userRepository.insert(user);
+        } catch (RuntimeException e) {
+            discardWhenStaged(stagedAvatar);
+            if (e instanceof DuplicateKeyException) {
+                log.warn("Registration failed: Email already exists - {}", request.getEmail());
+                throw new IllegalArgumentException("Email already registered");
+            }
+            throw e;
         }
 
-        User savedUser = userRepository.save(user);
+        if (staged != null) {
+            fileStorageService.commitAvatar(staged);
+            log.info("Avatar uploaded for user: {}", savedUser.getAvatar());
+        }
         log.info("User registered successfully with ID: {} and role: {}", savedUser.getId(), savedUser.getRole());
 
         return toUserResponse(savedUser);
     }
 
+    private FileStorageService.StagedAvatar awaitStagedAvatar(CompletableFuture<FileStorageService.StagedAvatar> stagedAvatar) {
+        try {
+            return stagedAvatar.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for staging to finish before discarding, so a failed registration never returns while
+     * the upload is still being read from the request. A failed staging has cleaned up after itself.
+     */
+    private void discardWhenStaged(CompletableFuture<FileStorageService.StagedAvatar> stagedAvatar) {
+        FileStorageService.StagedAvatar staged;
+        try {
+            staged = stagedAvatar.join();
+        } catch (CompletionException | CancellationException e) {
+            return;
+        }
+        fileStorageService.discardStagedAvatar(staged);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        avatarExecutor.close();
+    }
+
     public UserResponse getProfile(String userId) {
+        return userProfileCache.get(userId, this::loadProfile);
+    }
+
+    private UserResponse loadProfile(String userId) {
         log.info("Fetching profile for user: {}", userId);
         
-        User user = userRepository.findById(userId)
+        User user = userRepository.findProfileById(userId)
                 .orElseThrow(() -> {
                     log.warn("Profile fetch failed: User not found - {}", userId);
                     return new IllegalArgumentException("User not found");
@@ -66,20 +144,46 @@ public class UserService {
         return toUserResponse(user);
     }
 
+    public BatchUsersResponse getProfiles(List<String> userIds) {
+        Set<String> unique = new LinkedHashSet<>(userIds);
+        log.info("Fetching {} profiles in batch", unique.size());
+
+        Map<String, UserResponse> found = userProfileCache.getAll(unique, this::loadProfiles);
+
+        List<UserResponse> users = new ArrayList<>(found.size());
+        List<String> missing = new ArrayList<>();
+        for (String userId : unique) {
+            UserResponse user = found.get(userId);
+            if (user != null) {
+                users.add(user);
+            } else {
+                missing.add(userId);
+            }
+        }
+        return new BatchUsersResponse(users, missing);
+    }
+
+    private Map<String, UserResponse> loadProfiles(Set<? extends String> userIds) {
+        Map<String, UserResponse> profiles = new HashMap<>();
+        for (User user : userRepository.findProfilesByIdIn(List.copyOf(userIds))) {
+            profiles.put(user.getId(), toUserResponse(user));
+        }
+        return profiles;
+    }
+
     public UserResponse updateProfile(String userId, UpdateProfileRequest request) {
         log.info("Updating profile for user: {}", userId);
-        
-        User user = userRepository.findById(userId)
+
+        if (request.getName() == null || request.getName().isBlank()) {
+            return getProfile(userId);
+        }
+
+        User updatedUser = userRepository.updateName(userId, request.getName())
                 .orElseThrow(() -> {
                     log.warn("Profile update failed: User not found - {}", userId);
                     return new IllegalArgumentException("User not found");
                 });
-
-        if (request.getName() != null && !request.getName().isBlank()) {
-            user.setName(request.getName());
-        }
-
-        User updatedUser = userRepository.save(user);
+        userProfileCache.invalidate(userId);
         log.info("Profile updated successfully for user: {}", userId);
         
         return toUserResponse(updatedUser);
@@ -88,42 +192,71 @@ public class UserService {
     public UserResponse updateAvatar(String userId, MultipartFile avatar) {
         log.info("Attempting to update avatar for user: {}", userId);
 
-        User user = userRepository.findById(userId)
+        String avatarPath = fileStorageService.storeAvatar(avatar);
+        User previous = userRepository.replaceAvatar(userId, avatarPath)
             .orElseThrow(() -> {
                 log.warn("Avatar update failed: User not found - {}", userId);
+                fileStorageService.releaseAvatar(avatarPath);
                 return new IllegalArgumentException("User not found");
             });
 
-        if (user.getAvatar() != null) {
-            fileStorageService.deleteAvatar(user.getAvatar());
+        // Re-uploading the same image stores nothing new; releasing the old reference balances the count
+        if (previous.getAvatar() != null) {
+            fileStorageService.releaseAvatar(previous.getAvatar());
         }
-
-        String avatarPath = fileStorageService.storeAvatar(avatar);
-        user.setAvatar(avatarPath);
-        User updatedUser = userRepository.save(user);
+        previous.setAvatar(avatarPath);
+        userProfileCache.invalidate(userId);
 
         log.info("Avatar updated successfully for user: {}", userId);
-        return toUserResponse(updatedUser);
+        return toUserResponse(previous);
     }
 
-    public UserStatsResponse getUserStats(String userId) {
+    public UserStatsResponse getUserStats(String userId, StatsPageRequest page) {
         log.info("Fetching buyer stats for user: {}", userId);
-        User user = userRepository.findById(userId)
+        ProductStatSort sort = ProductStatSort.fromString(page.getSortBy(), ProductStatSort.QUANTITY);
+        User user = userRepository.findStatsById(userId, "totalSpent", sort)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
-        List<ProductStat> top = user.getProductStats().stream()
-                .sorted(Comparator.comparingInt(ProductStat::getTotalQuantity).reversed())
-                .toList();
-        return new UserStatsResponse(user.getTotalSpent(), top);
+        List<ProductStat> top = findProductStats(user, sort, page);
+        return new UserStatsResponse(user.getTotalSpent(), top, nextCursor(top, sort, page));
     }
 
-    public SellerStatsResponse getSellerStats(String userId) {
+    public SellerStatsResponse getSellerStats(String userId, StatsPageRequest page) {
         log.info("Fetching seller stats for user: {}", userId);
-        User user = userRepository.findById(userId)
+        ProductStatSort sort = ProductStatSort.fromString(page.getSortBy(), ProductStatSort.AMOUNT);
+        User user = userRepository.findStatsById(userId, "totalRevenue", sort)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
-        List<ProductStat> top = user.getProductStats().stream()
-                .sorted(Comparator.comparing(ProductStat::getTotalAmount).reversed())
-                .toList();
-        return new SellerStatsResponse(user.getTotalRevenue(), top);
+        List<ProductStat> top = findProductStats(user, sort, page);
+        return new SellerStatsResponse(user.getTotalRevenue(), top, nextCursor(top, sort, page));
+    }
+
+    private List<ProductStat> findProductStats(User user, ProductStatSort sort, StatsPageRequest page) {
+        if (page.getCursor() != null && !page.getCursor().isBlank()) {
+            ProductStatCursor cursor = ProductStatCursor.decode(page.getCursor(), sort);
+            return toProductStats(userProductStatRepository.findTopStatsAfter(user.getId(), cursor, page.getLimit()));
+        }
+
+        List<ProductStat> topProducts = sort == ProductStatSort.QUANTITY
+                ? user.getTopProductsByQuantity()
+                : user.getTopProductsByAmount();
+        if (topProducts != null && page.getOffset() + page.getLimit() <= topProductsSize) {
+            int from = Math.min(page.getOffset(), topProducts.size());
+            int to = Math.min(page.getOffset() + page.getLimit(), topProducts.size());
+            return topProducts.subList(from, to);
+        }
+
+        return toProductStats(userProductStatRepository.findTopStats(
+                user.getId(), sort, page.getOffset(), page.getLimit()));
+    }
+
+    private String nextCursor(List<ProductStat> stats, ProductStatSort sort, StatsPageRequest page) {
+        if (stats.size() < page.getLimit()) {
+            return null;
+        }
+        return ProductStatCursor.after(stats.getLast(), sort).encode();
+    }
+
+    private List<ProductStat> toProductStats(List<UserProductStat> stats) {
+        return stats.stream().map(UserProductStat::toProductStat).toList();
     }
 
     private UserResponse toUserResponse(User user) {
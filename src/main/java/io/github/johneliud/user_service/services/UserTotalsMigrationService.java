@@ -0,0 +1,57 @@
+package io.github.johneliud.user_service.services;
+
+import com.mongodb.client.result.UpdateResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Converts {@code totalSpent} and {@code totalRevenue} written as strings, before BigDecimal was
+ * stored as decimal128, to decimals. $inc fails on a string, which would abort every stats batch
+ * touching such a user. Runs once all singletons exist and before the Kafka listener containers
+ * start, so the consumer never sees an unconverted user; later starts find nothing to convert.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserTotalsMigrationService implements SmartInitializingSingleton {
+    private static final String USERS_COLLECTION = "users";
+    private static final List<String> TOTAL_FIELDS = List.of("totalSpent", "totalRevenue");
+    private static final int BSON_STRING = 2;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${stats.migration.enabled:true}")
+    private boolean enabled;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled) {
+            migrate();
+        }
+    }
+
+    public long migrate() {
+        long converted = 0;
+        for (String field : TOTAL_FIELDS) {
+            UpdateResult result = mongoTemplate.updateMulti(
+                    Query.query(Criteria.where(field).type(BSON_STRING)),
+                    AggregationUpdate.update().set(field).toValue(ConvertOperators.valueOf(field).convertToDecimal()),
+                    USERS_COLLECTION);
+            if (result.getModifiedCount() > 0) {
+                log.info("Converted {} of {} users from string to decimal", field, result.getModifiedCount());
+            }
+            converted += result.getModifiedCount();
+        }
+        return converted;
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.johneliud.user_service.benchmarks;
+
+import io.github.johneliud.user_service.security.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures token generation and validation with the key and parser built once in {@link JwtUtil},
+ * with and without the verified-token cache, against the previous approach of deriving the key and
+ * building a parser per call.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args="JwtUtilBenchmark -prof gc"
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtUtilBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret";
+
+    private JwtUtil jwtUtil;
+    private JwtUtil uncachedJwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtUtil = new JwtUtil(SECRET, "k1", "k0:" + SECRET.toUpperCase(), 3_600_000L, 10_000L, new SimpleMeterRegistry());
+        uncachedJwtUtil = new JwtUtil(SECRET, "k1", "", 3_600_000L, 0L, new SimpleMeterRegistry());
+        token = jwtUtil.generateToken("user123", "john@example.com", "CLIENT");
+    }
+
+    @Benchmark
+    public String generateCached() {
+        return jwtUtil.generateToken("user123", "john@example.com", "CLIENT");
+    }
+
+    @Benchmark
+    public String generatePerCallKey() {
+        return Jwts.builder()
+                .subject("user123")
+                .claim("email", "john@example.com")
+                .claim("role", "CLIENT")
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + 3_600_000L))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .compact();
+    }
+
+    @Benchmark
+    public Claims validateCacheHit() {
+        return jwtUtil.extractClaims(token);
+    }
+
+    @Benchmark
+    public Claims validateSharedParser() {
+        return uncachedJwtUtil.extractClaims(token);
+    }
+
+    @Benchmark
+    public Claims validatePerCallParser() {
+        return Jwts.parser()
+                .verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.johneliud.user_service.benchmarks;
+
+import io.github.johneliud.user_service.config.OrderPlacedEventDeserializer;
+import io.github.johneliud.user_service.dto.OrderPlacedEvent;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the previous StringDeserializer + {@code ObjectMapper.readValue(String, Class)} path
+ * with {@link OrderPlacedEventDeserializer} reading the fetched bytes. Add {@code -prof gc} to
+ * compare allocation per record.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args="OrderPlacedEventDecodeBenchmark -prof gc"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderPlacedEventDecodeBenchmark {
+
+    @Param({"1", "20"})
+    private int itemsPerOrder;
+
+    private ObjectMapper objectMapper;
+    private OrderPlacedEventDeserializer deserializer;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() {
+        objectMapper = JsonMapper.builder().build();
+        deserializer = new OrderPlacedEventDeserializer(objectMapper);
+
+        StringBuilder json = new StringBuilder("{\"orderId\":\"o-1\",\"userId\":\"buyer-1\",\"sellerId\":\"seller-1\",")
+                .append("\"totalAmount\":").append(itemsPerOrder * 19.99).append(",\"items\":[");
+        for (int i = 0; i < itemsPerOrder; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"productId\":\"p").append(i).append("\",\"productName\":\"Product ").append(i)
+                    .append("\",\"price\":19.99,\"quantity\":1}");
+        }
+        payload = json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public OrderPlacedEvent stringThenObjectMapper() {
+        String value = new String(payload, StandardCharsets.UTF_8);
+        return objectMapper.readValue(value, OrderPlacedEvent.class);
+    }
+
+    @Benchmark
+    public OrderPlacedEvent typedDeserializerBytes() {
+        return deserializer.deserialize("order-placed", payload);
+    }
+
+    @Benchmark
+    public OrderPlacedEvent typedDeserializerByteBuffer() {
+        return deserializer.deserialize("order-placed", null, ByteBuffer.wrap(payload));
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.johneliud.user_service.benchmarks;
+
+import io.github.johneliud.user_service.models.ProductStat;
+import io.github.johneliud.user_service.models.UserStatsDelta;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares merging an order into a seller's product stats with the previous linear stream scan
+ * against the productId-indexed {@link UserStatsDelta}.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args="ProductStatMergeBenchmark"
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductStatMergeBenchmark {
+
+    @Param({"100", "10000", "50000"})
+    private int existingProducts;
+
+    @Param({"5", "50"})
+    private int itemsPerOrder;
+
+    private List<ProductStat> linearStats;
+    private UserStatsDelta indexedStats;
+    private String[] orderProductIds;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        linearStats = new ArrayList<>(existingProducts);
+        indexedStats = new UserStatsDelta("seller");
+        for (int i = 0; i < existingProducts; i++) {
+            linearStats.add(new ProductStat("p" + i, "Product " + i, 1, BigDecimal.ONE));
+            indexedStats.addProduct("p" + i, "Product " + i, 1, BigDecimal.ONE);
+        }
+
+        // Spread the order across the catalogue so the linear scan cannot get lucky
+        orderProductIds = new String[itemsPerOrder];
+        for (int i = 0; i < itemsPerOrder; i++) {
+            orderProductIds[i] = "p" + (existingProducts - 1 - (i * (existingProducts / itemsPerOrder)));
+        }
+    }
+
+    @Benchmark
+    public void linearScan(Blackhole blackhole) {
+        for (String productId : orderProductIds) {
+            linearStats.stream()
+                    .filter(s -> s.getProductId().equals(productId))
+                    .findFirst()
+                    .ifPresentOrElse(
+                            s -> {
+                                s.setTotalQuantity(s.getTotalQuantity() + 1);
+                                s.setTotalAmount(s.getTotalAmount().add(BigDecimal.ONE));
+                            },
+                            () -> linearStats.add(new ProductStat(productId, productId, 1, BigDecimal.ONE)));
+        }
+        blackhole.consume(linearStats);
+    }
+
+    @Benchmark
+    public void indexed(Blackhole blackhole) {
+        for (String productId : orderProductIds) {
+            indexedStats.addProduct(productId, productId, 1, BigDecimal.ONE);
+        }
+        blackhole.consume(indexedStats);
+    }
+}
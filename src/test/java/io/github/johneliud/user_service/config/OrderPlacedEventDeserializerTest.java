@@ -0,0 +1,54 @@
+package io.github.johneliud.user_service.config;
+
+import io.github.johneliud.user_service.dto.OrderPlacedEvent;
+import org.apache.kafka.common.errors.SerializationException;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderPlacedEventDeserializerTest {
+
+    private static final String JSON = "{\"orderId\":\"o1\",\"userId\":\"b1\",\"sellerId\":\"s1\",\"totalAmount\":20.00,"
+            + "\"items\":[{\"productId\":\"p1\",\"productName\":\"Phone\",\"price\":10.00,\"quantity\":2}]}";
+
+    private final OrderPlacedEventDeserializer deserializer =
+            new OrderPlacedEventDeserializer(JsonMapper.builder().build());
+
+    @Test
+    void deserialize_bytes_readsEvent() {
+        OrderPlacedEvent event = deserializer.deserialize("order-placed", JSON.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(event.getOrderId()).isEqualTo("o1");
+        assertThat(event.getTotalAmount()).isEqualByComparingTo(new BigDecimal("20.00"));
+        assertThat(event.getItems()).singleElement()
+                .satisfies(item -> assertThat(item.getQuantity()).isEqualTo(2));
+    }
+
+    @Test
+    void deserialize_byteBufferSlice_readsOnlyRemainingBytes() {
+        byte[] framed = ("xx" + JSON + "yy").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(framed, 2, JSON.length()).slice();
+
+        OrderPlacedEvent event = deserializer.deserialize("order-placed", null, buffer);
+
+        assertThat(event.getSellerId()).isEqualTo("s1");
+    }
+
+    @Test
+    void deserialize_null_returnsNull() {
+        assertThat(deserializer.deserialize("order-placed", (byte[]) null)).isNull();
+    }
+
+    @Test
+    void deserialize_malformed_throwsSerializationException() {
+        assertThatThrownBy(() -> deserializer.deserialize("order-placed", "not-json".getBytes(StandardCharsets.UTF_8)))
+                .isInstanceOf(SerializationException.class)
+                .hasMessageContaining("order-placed");
+    }
+}
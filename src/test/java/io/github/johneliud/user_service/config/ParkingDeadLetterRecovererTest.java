@@ -0,0 +1,58 @@
+package io.github.johneliud.user_service.config;
+
+import io.github.johneliud.user_service.services.OrderEventRecoveryService;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.listener.ConsumerRecordRecoverer;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class ParkingDeadLetterRecovererTest {
+
+    private final ConsumerRecord<String, String> record = new ConsumerRecord<>("order-placed", 0, 7L, "o1", "{}");
+    private final Exception failure = new IllegalStateException("forward failed");
+
+    @Mock
+    private ConsumerRecordRecoverer publisher;
+
+    @Mock
+    private OrderEventRecoveryService orderEventRecoveryService;
+
+    @Test
+    void accept_publishesToRetryTopicWithoutParking() {
+        new ParkingDeadLetterRecoverer(publisher, orderEventRecoveryService).accept(record, failure);
+
+        verify(publisher).accept(record, failure);
+        verifyNoInteractions(orderEventRecoveryService);
+    }
+
+    @Test
+    void accept_parksWhenPublishFails() {
+        doThrow(new KafkaException("broker down")).when(publisher).accept(record, failure);
+
+        new ParkingDeadLetterRecoverer(publisher, orderEventRecoveryService).accept(record, failure);
+
+        verify(orderEventRecoveryService).park(eq(record), any(String.class));
+    }
+
+    @Test
+    void accept_propagatesWhenParkingFailsSoTheBatchIsRedelivered() {
+        doThrow(new KafkaException("broker down")).when(publisher).accept(record, failure);
+        doThrow(new DataAccessResourceFailureException("mongo down"))
+                .when(orderEventRecoveryService).park(eq(record), any(String.class));
+
+        assertThatThrownBy(() -> new ParkingDeadLetterRecoverer(publisher, orderEventRecoveryService).accept(record, failure))
+                .isInstanceOf(DataAccessResourceFailureException.class);
+    }
+}
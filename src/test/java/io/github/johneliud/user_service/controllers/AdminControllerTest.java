@@ -0,0 +1,103 @@
+package io.github.johneliud.user_service.controllers;
+
+import io.github.johneliud.user_service.dto.ReplayResponse;
+import io.github.johneliud.user_service.exception.GlobalExceptionHandler;
+import io.github.johneliud.user_service.services.OrderEventRecoveryService;
+import io.github.johneliud.user_service.services.UserImportService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(MockitoExtension.class)
+class AdminControllerTest {
+
+    @Mock
+    private OrderEventRecoveryService orderEventRecoveryService;
+
+    @Mock
+    private UserImportService userImportService;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(new AdminController(orderEventRecoveryService, userImportService))
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @Test
+    void replayParkedEvents_allowsAdmin() throws Exception {
+        when(orderEventRecoveryService.replayParked(100)).thenReturn(new ReplayResponse(3, 0));
+
+        mockMvc.perform(post("/api/users/admin/parked-events/replay")
+                        .param("limit", "100")
+                        .header("X-User-Id", "admin-1")
+                        .header("X-User-Role", "ADMIN"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.replayed").value(3));
+    }
+
+    @Test
+    void replayParkedEvents_rejectsOtherRoles() throws Exception {
+        mockMvc.perform(post("/api/users/admin/parked-events/replay")
+                        .header("X-User-Id", "seller-1")
+                        .header("X-User-Role", "SELLER"))
+                .andExpect(status().isForbidden());
+
+        verifyNoInteractions(orderEventRecoveryService);
+    }
+
+    @Test
+    void replayParkedEvents_requiresAuthentication() throws Exception {
+        mockMvc.perform(post("/api/users/admin/parked-events/replay"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void importUsers_streamsResultsForAdmin() throws Exception {
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(2);
+            out.write("{\"line\":1,\"status\":\"CREATED\"}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(userImportService).importUsers(any(), eq(UserImportService.Format.CSV), any());
+
+        mockMvc.perform(post("/api/users/admin/import")
+                        .header("X-User-Id", "admin-1")
+                        .header("X-User-Role", "ADMIN")
+                        .contentType("text/csv")
+                        .content("name,email,password,role\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string("{\"line\":1,\"status\":\"CREATED\"}\n"));
+    }
+
+    @Test
+    void importUsers_rejectsOtherRoles() throws Exception {
+        mockMvc.perform(post("/api/users/admin/import")
+                        .header("X-User-Id", "client-1")
+                        .header("X-User-Role", "CLIENT")
+                        .contentType("application/x-ndjson")
+                        .content("{}\n"))
+                .andExpect(status().isForbidden());
+
+        verifyNoInteractions(userImportService);
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.johneliud.user_service.dto;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchUsersRequestTest {
+
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Test
+    void validate_rejectsNullAndBlankIds() {
+        BatchUsersRequest request = new BatchUsersRequest();
+        request.setIds(Arrays.asList("u1", null, " "));
+
+        Set<ConstraintViolation<BatchUsersRequest>> violations = validator.validate(request);
+
+        assertThat(violations).extracting(ConstraintViolation::getMessage)
+                .containsExactly("ids must not contain blank values", "ids must not contain blank values");
+    }
+
+    @Test
+    void validate_acceptsPlainIds() {
+        BatchUsersRequest request = new BatchUsersRequest();
+        request.setIds(List.of("u1", "u2"));
+
+        assertThat(validator.validate(request)).isEmpty();
+    }
+}
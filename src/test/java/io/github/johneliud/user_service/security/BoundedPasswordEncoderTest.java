@@ -0,0 +1,68 @@
+package io.github.johneliud.user_service.security;
+
+import io.github.johneliud.user_service.exception.ServiceUnavailableException;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BoundedPasswordEncoderTest {
+
+    @Test
+    void matches_runsOnDelegate() {
+        try (BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(new BlockingEncoder(new CountDownLatch(0)), 1, 1)) {
+            assertThat(encoder.matches("secret", "secret")).isTrue();
+            assertThat(encoder.matches("secret", "other")).isFalse();
+        }
+    }
+
+    @Test
+    void encode_whenPoolAndQueueAreFull_rejectsWithServiceUnavailable() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BlockingEncoder delegate = new BlockingEncoder(release);
+        try (BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(delegate, 1, 1)) {
+            CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> encoder.encode("a"));
+            assertThat(delegate.started.await(5, TimeUnit.SECONDS)).isTrue();
+            CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> encoder.encode("b"));
+            while (encoder.queueDepth() < 1) {
+                Thread.onSpinWait();
+            }
+
+            assertThatThrownBy(() -> encoder.encode("c")).isInstanceOf(ServiceUnavailableException.class);
+
+            release.countDown();
+            assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("a");
+            assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("b");
+        }
+    }
+
+    private static final class BlockingEncoder implements PasswordEncoder {
+        private final CountDownLatch release;
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        BlockingEncoder(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public String encode(CharSequence rawPassword) {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return rawPassword.toString();
+        }
+
+        @Override
+        public boolean matches(CharSequence rawPassword, String encodedPassword) {
+            return rawPassword.toString().equals(encodedPassword);
+        }
+    }
+}
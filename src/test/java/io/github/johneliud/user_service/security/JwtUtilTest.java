@@ -0,0 +1,99 @@
+package io.github.johneliud.user_service.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtUtilTest {
+
+    private static final String CURRENT_SECRET = "current-secret-current-secret-current-secret";
+    private static final String PREVIOUS_SECRET = "previous-secret-previous-secret-previous-secret";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final JwtUtil jwtUtil =
+            new JwtUtil(CURRENT_SECRET, "k2", "k1:" + PREVIOUS_SECRET, 60_000L, 1_000L, meterRegistry);
+
+    @Test
+    void generateToken_roundTripsClaimsAndKeyId() {
+        String token = jwtUtil.generateToken("user123", "john@example.com", "CLIENT");
+
+        Claims claims = jwtUtil.extractClaims(token);
+        assertThat(claims.getSubject()).isEqualTo("user123");
+        assertThat(claims.get("role", String.class)).isEqualTo("CLIENT");
+        assertThat(Jwts.parser().verifyWith(key(CURRENT_SECRET)).build()
+                .parseSignedClaims(token).getHeader().getKeyId()).isEqualTo("k2");
+    }
+
+    @Test
+    void validateToken_acceptsTokenSignedWithRetiringKey() {
+        String token = jwtUtil(PREVIOUS_SECRET, "k1", "").generateToken("user123", "john@example.com", "CLIENT");
+
+        assertThat(jwtUtil.extractUserId(token)).isEqualTo("user123");
+    }
+
+    @Test
+    void validateToken_acceptsLegacyTokenWithoutKeyId() {
+        String token = Jwts.builder().subject("user123")
+                .expiration(new Date(System.currentTimeMillis() + 60_000L))
+                .signWith(key(CURRENT_SECRET)).compact();
+
+        assertThat(jwtUtil.validateToken(token)).isTrue();
+    }
+
+    @Test
+    void validateToken_rejectsUnknownKeyId() {
+        String token = jwtUtil(CURRENT_SECRET, "k3", "").generateToken("user123", "john@example.com", "CLIENT");
+
+        assertThat(jwtUtil.validateToken(token)).isFalse();
+    }
+
+    @Test
+    void validateToken_rejectsTokenSignedWithRemovedKey() {
+        String token = jwtUtil(PREVIOUS_SECRET, "k1", "").generateToken("user123", "john@example.com", "CLIENT");
+
+        assertThat(jwtUtil(CURRENT_SECRET, "k2", "").validateToken(token)).isFalse();
+    }
+
+    @Test
+    void extractClaims_repeatedToken_isServedFromCache() {
+        String token = jwtUtil.generateToken("user123", "john@example.com", "CLIENT");
+
+        Claims first = jwtUtil.extractClaims(token);
+        Claims second = jwtUtil.extractClaims(token);
+
+        assertThat(second).isSameAs(first);
+        assertThat(cacheResults("hit")).isEqualTo(1.0);
+        assertThat(cacheResults("miss")).isEqualTo(1.0);
+    }
+
+    @Test
+    void extractClaims_invalidToken_isNotCached() {
+        String token = jwtUtil(CURRENT_SECRET, "k3", "").generateToken("user123", "john@example.com", "CLIENT");
+
+        assertThat(jwtUtil.validateToken(token)).isFalse();
+        assertThat(jwtUtil.validateToken(token)).isFalse();
+        assertThat(cacheResults("miss")).isEqualTo(2.0);
+    }
+
+    private double cacheResults(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "jwt.verified-tokens").tag("result", result)
+                .functionCounter().count();
+    }
+
+    private static JwtUtil jwtUtil(String secret, String kid, String verificationKeys) {
+        return new JwtUtil(secret, kid, verificationKeys, 60_000L, 1_000L, new SimpleMeterRegistry());
+    }
+
+    private static SecretKey key(String secret) {
+        return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+    }
+}
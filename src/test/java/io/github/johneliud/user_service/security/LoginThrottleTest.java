@@ -0,0 +1,63 @@
+package io.github.johneliud.user_service.security;
+
+import io.github.johneliud.user_service.exception.TooManyRequestsException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatNoException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LoginThrottleTest {
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final LoginThrottle throttle = new LoginThrottle(10, 60, 3, 6, now::get);
+
+    @Test
+    void acquire_allowsBurstThenRejectsPerEmail() {
+        for (int i = 0; i < 3; i++) {
+            throttle.acquire("john@example.com", "10.0.0." + i);
+        }
+
+        assertThatThrownBy(() -> throttle.acquire("JOHN@example.com", "10.0.0.9"))
+                .isInstanceOf(TooManyRequestsException.class)
+                .satisfies(e -> assertThat(((TooManyRequestsException) e).getRetryAfterSeconds()).isEqualTo(10));
+        assertThatNoException().isThrownBy(() -> throttle.acquire("jane@example.com", "10.0.0.9"));
+    }
+
+    @Test
+    void acquire_rejectsPerIpAcrossEmails() {
+        for (int i = 0; i < 10; i++) {
+            throttle.acquire("user" + i + "@example.com", "10.0.0.1");
+        }
+
+        assertThatThrownBy(() -> throttle.acquire("other@example.com", "10.0.0.1"))
+                .isInstanceOf(TooManyRequestsException.class);
+    }
+
+    @Test
+    void acquire_refillsOverTime() {
+        for (int i = 0; i < 3; i++) {
+            throttle.acquire("john@example.com", "10.0.0.1");
+        }
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        assertThatNoException().isThrownBy(() -> throttle.acquire("john@example.com", "10.0.0.1"));
+    }
+
+    @Test
+    void sweep_dropsOnlyFullyRefilledBuckets() {
+        throttle.acquire("john@example.com", "10.0.0.1");
+        assertThat(throttle.size()).isEqualTo(2);
+
+        throttle.sweep();
+        assertThat(throttle.size()).isEqualTo(2);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        throttle.sweep();
+        assertThat(throttle.size()).isZero();
+    }
+}
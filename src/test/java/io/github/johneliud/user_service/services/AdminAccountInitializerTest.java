@@ -0,0 +1,66 @@
+package io.github.johneliud.user_service.services;
+
+import io.github.johneliud.user_service.models.Role;
+import io.github.johneliud.user_service.models.User;
+import io.github.johneliud.user_service.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AdminAccountInitializerTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PasswordEncoder passwordEncoder;
+
+    @Test
+    void run_createsAdminAccountWhenMissing() {
+        when(userRepository.findByEmail("admin@example.com")).thenReturn(Optional.empty());
+        when(passwordEncoder.encode("Secret123!")).thenReturn("hashed");
+
+        initializer("admin@example.com", "Secret123!").run(null);
+
+        ArgumentCaptor<User> admin = ArgumentCaptor.forClass(User.class);
+        verify(userRepository).insert(admin.capture());
+        assertThat(admin.getValue().getRole()).isEqualTo(Role.ADMIN);
+        assertThat(admin.getValue().getPassword()).isEqualTo("hashed");
+    }
+
+    @Test
+    void run_neverPromotesExistingAccount() {
+        User seller = new User();
+        seller.setRole(Role.SELLER);
+        when(userRepository.findByEmail("admin@example.com")).thenReturn(Optional.of(seller));
+
+        initializer("admin@example.com", "Secret123!").run(null);
+
+        verify(userRepository, never()).insert(any(User.class));
+        assertThat(seller.getRole()).isEqualTo(Role.SELLER);
+    }
+
+    @Test
+    void run_doesNothingWhenNotConfigured() {
+        initializer("", "").run(null);
+
+        verifyNoInteractions(userRepository, passwordEncoder);
+    }
+
+    private AdminAccountInitializer initializer(String email, String password) {
+        return new AdminAccountInitializer(userRepository, passwordEncoder, email, password, "Administrator");
+    }
+}
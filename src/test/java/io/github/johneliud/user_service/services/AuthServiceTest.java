@@ -2,10 +2,13 @@ package io.github.johneliud.user_service.services;
 
 import io.github.johneliud.user_service.dto.LoginRequest;
 import io.github.johneliud.user_service.dto.LoginResponse;
+import io.github.johneliud.user_service.exception.ServiceUnavailableException;
+import io.github.johneliud.user_service.exception.TooManyRequestsException;
 import io.github.johneliud.user_service.models.Role;
 import io.github.johneliud.user_service.models.User;
 import io.github.johneliud.user_service.repositories.UserRepository;
 import io.github.johneliud.user_service.security.JwtUtil;
+import io.github.johneliud.user_service.security.LoginThrottle;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
@@ -16,6 +19,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,6 +35,9 @@ class AuthServiceTest {
     @Mock
     private JwtUtil jwtUtil;
 
+    @Mock
+    private LoginThrottle loginThrottle;
+
     @InjectMocks
     private AuthService authService;
 
@@ -46,11 +54,11 @@ class AuthServiceTest {
         user.setRole(Role.CLIENT);
         user.setName("Test User");
 
-        when(userRepository.findByEmail(request.getEmail())).thenReturn(Optional.of(user));
+        when(userRepository.findCredentialsByEmail(request.getEmail())).thenReturn(Optional.of(user));
         when(passwordEncoder.matches(request.getPassword(), user.getPassword())).thenReturn(true);
         when(jwtUtil.generateToken(user.getId(), user.getEmail(), user.getRole().name())).thenReturn("token123");
 
-        LoginResponse response = authService.login(request);
+        LoginResponse response = authService.login(request, "10.0.0.1");
 
         assertNotNull(response);
         assertEquals("token123", response.getToken());
@@ -64,9 +72,24 @@ class AuthServiceTest {
         request.setEmail("nonexistent@example.com");
         request.setPassword("Password123!");
 
-        when(userRepository.findByEmail(request.getEmail())).thenReturn(Optional.empty());
+        when(userRepository.findCredentialsByEmail(request.getEmail())).thenReturn(Optional.empty());
+        when(passwordEncoder.encode(anyString())).thenReturn("dummyHash");
 
-        assertThrows(IllegalArgumentException.class, () -> authService.login(request));
+        assertThrows(IllegalArgumentException.class, () -> authService.login(request, "10.0.0.1"));
+        verify(passwordEncoder).matches(request.getPassword(), "dummyHash");
+    }
+
+    @Test
+    void login_Throttled_DoesNotLookUpUser() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("Password123!");
+
+        doThrow(new TooManyRequestsException("Too many login attempts, please try again later", 12))
+                .when(loginThrottle).acquire("test@example.com", "10.0.0.1");
+
+        assertThrows(TooManyRequestsException.class, () -> authService.login(request, "10.0.0.1"));
+        verifyNoInteractions(userRepository, passwordEncoder);
     }
 
     @Test
@@ -78,9 +101,54 @@ class AuthServiceTest {
         User user = new User();
         user.setPassword("hashedPassword");
 
-        when(userRepository.findByEmail(request.getEmail())).thenReturn(Optional.of(user));
+        when(userRepository.findCredentialsByEmail(request.getEmail())).thenReturn(Optional.of(user));
         when(passwordEncoder.matches(request.getPassword(), user.getPassword())).thenReturn(false);
 
-        assertThrows(IllegalArgumentException.class, () -> authService.login(request));
+        assertThrows(IllegalArgumentException.class, () -> authService.login(request, "10.0.0.1"));
+    }
+
+    @Test
+    void login_LegacyHash_IsUpgraded() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("Password123!");
+
+        User user = new User();
+        user.setId("123");
+        user.setEmail("test@example.com");
+        user.setPassword("$2a$10$legacy");
+        user.setRole(Role.CLIENT);
+
+        when(userRepository.findCredentialsByEmail(request.getEmail())).thenReturn(Optional.of(user));
+        when(passwordEncoder.matches(request.getPassword(), user.getPassword())).thenReturn(true);
+        when(passwordEncoder.upgradeEncoding("$2a$10$legacy")).thenReturn(true);
+        when(passwordEncoder.encode(request.getPassword())).thenReturn("{bcrypt}$2a$12$upgraded");
+        when(jwtUtil.generateToken(user.getId(), user.getEmail(), user.getRole().name())).thenReturn("token123");
+
+        authService.login(request, "10.0.0.1");
+
+        verify(userRepository).replacePasswordHash("123", "$2a$10$legacy", "{bcrypt}$2a$12$upgraded");
+    }
+
+    @Test
+    void login_HashingPoolBusy_StillSucceedsWithoutUpgrade() {
+        LoginRequest request = new LoginRequest();
+        request.setEmail("test@example.com");
+        request.setPassword("Password123!");
+
+        User user = new User();
+        user.setId("123");
+        user.setEmail("test@example.com");
+        user.setPassword("$2a$10$legacy");
+        user.setRole(Role.CLIENT);
+
+        when(userRepository.findCredentialsByEmail(request.getEmail())).thenReturn(Optional.of(user));
+        when(passwordEncoder.matches(request.getPassword(), user.getPassword())).thenReturn(true);
+        when(passwordEncoder.upgradeEncoding("$2a$10$legacy")).thenReturn(true);
+        when(passwordEncoder.encode(request.getPassword())).thenThrow(new ServiceUnavailableException("busy"));
+        when(jwtUtil.generateToken(user.getId(), user.getEmail(), user.getRole().name())).thenReturn("token123");
+
+        assertEquals("token123", authService.login(request, "10.0.0.1").getToken());
+        verify(userRepository, never()).replacePasswordHash(any(), any(), any());
     }
 }
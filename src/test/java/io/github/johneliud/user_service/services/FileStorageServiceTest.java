@@ -0,0 +1,339 @@
+package io.github.johneliud.user_service.services;
+
+import io.github.johneliud.user_service.models.AvatarBlob;
+import io.github.johneliud.user_service.repositories.AvatarBlobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class FileStorageServiceTest {
+
+    private static final byte[] PNG_HEADER = {
+            (byte) 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D
+    };
+
+    @TempDir
+    Path uploadDir;
+
+    @Mock
+    private AvatarBlobRepository avatarBlobRepository;
+
+    private LocalAvatarStore localStore;
+    private FileStorageService fileStorageService;
+
+    @BeforeEach
+    void setUp() {
+        localStore = new LocalAvatarStore(uploadDir.toString());
+        LegacyAvatarFiles legacyFiles = new LegacyAvatarFiles(uploadDir.toString());
+        fileStorageService = new FileStorageService(avatarBlobRepository, localStore, legacyFiles,
+                new AvatarMigrator(localStore, legacyFiles, false), uploadDir.toString(), Duration.ofMinutes(10),
+                List.of(128, 64), Executors.newSingleThreadExecutor());
+    }
+
+    @AfterEach
+    void tearDown() {
+        fileStorageService.shutdown();
+    }
+
+    @Test
+    void storeAvatar_streamsValidImageIntoStoreUnderItsContentHash() throws Exception {
+        byte[] content = png(64 * 1024);
+
+        String filename = fileStorageService.storeAvatar(
+                new MockMultipartFile("avatar", "me.jpeg", "image/jpeg", content));
+
+        assertThat(filename).isEqualTo(sha256(content) + ".png");
+        assertThat(Files.readAllBytes(localStore.pathFor(filename))).isEqualTo(content);
+        assertThat(localStore.pathFor(filename).getParent().getParent().getParent()).isEqualTo(uploadDir);
+        assertThat(stagedFiles()).isEmpty();
+        verify(avatarBlobRepository).acquire(filename, content.length);
+    }
+
+    @Test
+    void storeAvatar_identicalUploadOnlyAddsReference() throws IOException {
+        byte[] content = png(1024);
+
+        String first = fileStorageService.storeAvatar(new MockMultipartFile("avatar", "a.png", "image/png", content));
+        String second = fileStorageService.storeAvatar(new MockMultipartFile("avatar", "b.png", "image/png", content));
+        fileStorageService.shutdown();
+
+        assertThat(second).isEqualTo(first);
+        assertThat(storedFiles()).containsExactlyInAnyOrder(localStore.pathFor(first), unrenderableMarker(first));
+        assertThat(stagedFiles()).isEmpty();
+        verify(avatarBlobRepository, times(2)).acquire(first, content.length);
+    }
+
+    @Test
+    void stageAvatar_rejectsFileWhoseBytesAreNotAnImage() throws IOException {
+        MockMultipartFile file = new MockMultipartFile("avatar", "me.png", "image/png", new byte[1024]);
+
+        assertThatThrownBy(() -> fileStorageService.stageAvatar(file))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid image file");
+        assertThat(stagedFiles()).isEmpty();
+    }
+
+    @Test
+    void stageAvatar_enforcesSizeLimitWhileStreaming() throws IOException {
+        // Declares a small size so only the streaming check can catch it
+        MockMultipartFile file = new MockMultipartFile("avatar", "me.png", "image/png", png(3 * 1024 * 1024)) {
+            @Override
+            public long getSize() {
+                return 1024;
+            }
+        };
+
+        assertThatThrownBy(() -> fileStorageService.stageAvatar(file))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("File size exceeds 2MB limit");
+        assertThat(stagedFiles()).isEmpty();
+    }
+
+    @Test
+    void findAvatar_returnsContentHashAsEtag() throws Exception {
+        byte[] content = png(1024);
+        String filename = fileStorageService.storeAvatar(
+                new MockMultipartFile("avatar", "me.png", "image/png", content));
+
+        FileStorageService.StoredAvatar avatar = fileStorageService.findAvatar(filename).orElseThrow();
+
+        assertThat(avatar.etag()).isEqualTo(sha256(content));
+        assertThat(avatar.contentLength()).isEqualTo(content.length);
+        assertThat(avatar.localPath()).isEqualTo(localStore.pathFor(filename));
+    }
+
+    @Test
+    void findAvatar_hashesAvatarsStoredBeforeContentAddressing() throws Exception {
+        byte[] content = png(512);
+        Files.write(uploadDir.resolve("legacy.png"), content);
+
+        assertThat(fileStorageService.findAvatar("legacy.png").orElseThrow().etag()).isEqualTo(sha256(content));
+    }
+
+    @Test
+    void findAvatar_prefersStoreAndServesLegacyFileUntilMigrated() throws Exception {
+        byte[] content = png(512);
+        Path legacy = uploadDir.resolve("legacy.png");
+        Files.write(legacy, content);
+        assertThat(fileStorageService.findAvatar("legacy.png").orElseThrow().localPath()).isEqualTo(legacy);
+
+        new AvatarMigrator(localStore, new LegacyAvatarFiles(uploadDir.toString()), false).migrateAll();
+
+        FileStorageService.StoredAvatar migrated = fileStorageService.findAvatar("legacy.png").orElseThrow();
+        assertThat(legacy).doesNotExist();
+        assertThat(migrated.localPath()).isEqualTo(localStore.pathFor("legacy.png"));
+        assertThat(migrated.etag()).isEqualTo(sha256(content));
+    }
+
+    @Test
+    void findAvatar_returnsEmptyForUnknownFile() {
+        assertThat(fileStorageService.findAvatar("missing.png")).isEmpty();
+    }
+
+    @Test
+    void findAvatar_rejectsPathsOutsideUploadDir() {
+        assertThatThrownBy(() -> fileStorageService.findAvatar("../secret.png"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> fileStorageService.findAvatar(".staging/upload.png"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void storeAvatar_rendersThumbnailsServedBySize() throws IOException {
+        String filename = fileStorageService.storeAvatar(
+                new MockMultipartFile("avatar", "me.png", "image/png", encodedPng(400, 200)));
+        fileStorageService.shutdown();
+
+        FileStorageService.StoredAvatar small = fileStorageService.findAvatar(filename, 32).orElseThrow();
+        FileStorageService.StoredAvatar medium = fileStorageService.findAvatar(filename, 100).orElseThrow();
+        FileStorageService.StoredAvatar original = fileStorageService.findAvatar(filename, 512).orElseThrow();
+
+        assertThat(dimensions(small.localPath())).containsExactly(64, 32);
+        assertThat(dimensions(medium.localPath())).containsExactly(128, 64);
+        assertThat(medium.filename()).endsWith("-128.jpg");
+        assertThat(medium.provisional()).isFalse();
+        assertThat(original.localPath()).isEqualTo(localStore.pathFor(filename));
+        assertThat(original.provisional()).isFalse();
+    }
+
+    @Test
+    void findAvatar_fallsBackToOriginalWhileThumbnailIsMissing() throws IOException {
+        Files.write(uploadDir.resolve("old.png"), encodedPng(300, 300));
+
+        FileStorageService.StoredAvatar avatar = fileStorageService.findAvatar("old.png", 64).orElseThrow();
+        fileStorageService.shutdown();
+
+        assertThat(avatar.provisional()).isTrue();
+        assertThat(avatar.filename()).isEqualTo("old.png");
+        assertThat(fileStorageService.findAvatar("old.png", 64).orElseThrow().filename())
+                .isEqualTo("old-64.jpg");
+    }
+
+    @Test
+    void findAvatar_servesUnrenderableAvatarAsFinalOriginal() throws IOException {
+        String filename = fileStorageService.storeAvatar(new MockMultipartFile("avatar", "me.webp", "image/webp", webp(1024)));
+        fileStorageService.shutdown();
+
+        FileStorageService.StoredAvatar avatar = fileStorageService.findAvatar(filename, 64).orElseThrow();
+
+        assertThat(avatar.filename()).isEqualTo(filename);
+        assertThat(avatar.provisional()).isFalse();
+        assertThat(localStore.stat("thumbnails/" + filename.replace(".webp", ".none"))).isPresent();
+    }
+
+    @Test
+    void findAvatar_servesCorruptAvatarAsFinalOriginal() throws IOException {
+        // A valid PNG signature followed by bytes the decoder rejects
+        String filename = fileStorageService.storeAvatar(new MockMultipartFile("avatar", "me.png", "image/png", png(1024)));
+        fileStorageService.shutdown();
+
+        FileStorageService.StoredAvatar avatar = fileStorageService.findAvatar(filename, 64).orElseThrow();
+
+        assertThat(avatar.filename()).isEqualTo(filename);
+        assertThat(avatar.provisional()).isFalse();
+        assertThat(unrenderableMarker(filename)).exists();
+    }
+
+    @Test
+    void releaseAvatar_deletesUntrackedAvatarAndThumbnails() throws IOException {
+        Files.write(uploadDir.resolve("legacy.png"), encodedPng(200, 200));
+        fileStorageService.findAvatar("legacy.png", 64);
+        fileStorageService.shutdown();
+        Path thumbnail = fileStorageService.findAvatar("legacy.png", 64).orElseThrow().localPath();
+
+        fileStorageService.releaseAvatar("legacy.png");
+
+        assertThat(thumbnail).doesNotExist();
+        assertThat(fileStorageService.findAvatar("legacy.png", 64)).isEmpty();
+    }
+
+    @Test
+    void releaseAvatar_keepsTrackedBlobForTheSweeper() throws IOException {
+        String filename = fileStorageService.storeAvatar(new MockMultipartFile("avatar", "me.png", "image/png", png(1024)));
+        when(avatarBlobRepository.release(filename)).thenReturn(Optional.of(new AvatarBlob(filename, 0, 1024, Instant.now())));
+
+        fileStorageService.releaseAvatar(filename);
+
+        assertThat(localStore.pathFor(filename)).exists();
+    }
+
+    @Test
+    void releaseAvatar_neverDeletesContentAddressedBlobDirectly() throws IOException {
+        String filename = fileStorageService.storeAvatar(new MockMultipartFile("avatar", "me.png", "image/png", png(1024)));
+        // No reference left to release, e.g. a repeated release racing a new upload of the same image
+        when(avatarBlobRepository.release(filename)).thenReturn(Optional.empty());
+
+        fileStorageService.releaseAvatar(filename);
+
+        assertThat(localStore.pathFor(filename)).exists();
+    }
+
+    @Test
+    void sweepUnreferencedBlobs_removesBlobAndThumbnails() throws IOException {
+        String filename = fileStorageService.storeAvatar(
+                new MockMultipartFile("avatar", "me.png", "image/png", encodedPng(200, 200)));
+        fileStorageService.shutdown();
+        Path thumbnail = fileStorageService.findAvatar(filename, 64).orElseThrow().localPath();
+        when(avatarBlobRepository.findUnreferencedBefore(any(), anyInt()))
+                .thenReturn(List.of(new AvatarBlob(filename, 0, 0, Instant.EPOCH)));
+        when(avatarBlobRepository.deleteIfUnreferenced(eq(filename), any())).thenReturn(true);
+
+        fileStorageService.sweepUnreferencedBlobs();
+
+        assertThat(localStore.pathFor(filename)).doesNotExist();
+        assertThat(thumbnail).doesNotExist();
+        assertThat(storedFiles()).isEmpty();
+    }
+
+    @Test
+    void sweepUnreferencedBlobs_restoresBlobReferencedMeanwhile() throws IOException {
+        byte[] content = png(1024);
+        String filename = fileStorageService.storeAvatar(new MockMultipartFile("avatar", "me.png", "image/png", content));
+        fileStorageService.shutdown();
+        when(avatarBlobRepository.findUnreferencedBefore(any(), anyInt()))
+                .thenReturn(List.of(new AvatarBlob(filename, 0, 0, Instant.EPOCH)));
+        when(avatarBlobRepository.deleteIfUnreferenced(eq(filename), any())).thenReturn(false);
+
+        fileStorageService.sweepUnreferencedBlobs();
+
+        assertThat(Files.readAllBytes(localStore.pathFor(filename))).isEqualTo(content);
+        assertThat(storedFiles()).containsExactlyInAnyOrder(localStore.pathFor(filename), unrenderableMarker(filename));
+    }
+
+    private byte[] encodedPng(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", out);
+        return out.toByteArray();
+    }
+
+    private List<Integer> dimensions(Path image) throws IOException {
+        BufferedImage read = ImageIO.read(image.toFile());
+        return List.of(read.getWidth(), read.getHeight());
+    }
+
+    private byte[] png(int size) {
+        byte[] content = new byte[size];
+        Arrays.fill(content, (byte) 7);
+        System.arraycopy(PNG_HEADER, 0, content, 0, PNG_HEADER.length);
+        return content;
+    }
+
+    private byte[] webp(int size) {
+        byte[] content = new byte[size];
+        System.arraycopy("RIFF".getBytes(StandardCharsets.US_ASCII), 0, content, 0, 4);
+        System.arraycopy("WEBP".getBytes(StandardCharsets.US_ASCII), 0, content, 8, 4);
+        return content;
+    }
+
+    private String sha256(byte[] content) throws NoSuchAlgorithmException {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+
+    private Path unrenderableMarker(String filename) {
+        return localStore.pathFor("thumbnails/" + filename.replace(".png", ".none"));
+    }
+
+    private List<Path> storedFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(uploadDir)) {
+            return files.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    private Stream<Path> stagedFiles() throws IOException {
+        Path staging = uploadDir.resolve(".staging");
+        return Files.exists(staging) ? Files.list(staging).toList().stream() : Stream.empty();
+    }
+}
@@ -0,0 +1,267 @@
+package io.github.johneliud.user_service.services;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import io.github.johneliud.user_service.dto.OrderItemEvent;
+import io.github.johneliud.user_service.dto.OrderPlacedEvent;
+import io.github.johneliud.user_service.models.ProcessedOrder;
+import io.github.johneliud.user_service.models.User;
+import io.github.johneliud.user_service.models.UserProductStat;
+import io.github.johneliud.user_service.repositories.UserProductStatRepository;
+import io.github.johneliud.user_service.repositories.UserProductStatRepositoryCustomImpl;
+import io.github.johneliud.user_service.repositories.UserRepository;
+import io.github.johneliud.user_service.repositories.UserRepositoryCustomImpl;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.MongoTransactionManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.repository.core.support.RepositoryComposition.RepositoryFragments;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.mongodb.MongoDBContainer;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Runs the stats write path against a real single-node replica set, so the bulk $inc upserts,
+ * the $pull/$push top-N merge, the ledger's unique _id inside a transaction and the startup
+ * migrations are exercised as Mongo executes them. Skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class OrderEventConsumerMongoTest {
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+    private static MongoClient client;
+
+    private final List<Fixture> fixtures = new ArrayList<>();
+
+    @BeforeAll
+    static void connect() {
+        client = MongoClients.create(MONGO.getConnectionString());
+    }
+
+    @AfterAll
+    static void disconnect() {
+        client.close();
+    }
+
+    @AfterEach
+    void dropDatabases() {
+        for (Fixture fixture : fixtures) {
+            fixture.consumer.shutdown();
+            fixture.mongoTemplate.getDb().drop();
+        }
+    }
+
+    @Test
+    void batch_givesSameDocumentsAsApplyingEventsOneByOne() {
+        List<OrderPlacedEvent> events = orders();
+        Fixture batched = fixture(4);
+        Fixture sequential = fixture(1);
+
+        batched.consumer.handleOrderPlacedBatch(events);
+        for (OrderPlacedEvent event : events) {
+            sequential.consumer.handleOrderPlaced(event);
+        }
+
+        assertThat(batched.users()).isEqualTo(sequential.users());
+        assertThat(batched.productStats()).isEqualTo(sequential.productStats());
+        assertThat(batched.processedKeys()).isEqualTo(sequential.processedKeys());
+
+        Document buyer = batched.user("buyer-1");
+        assertThat(buyer.get("totalSpent")).isEqualTo(new Decimal128(new BigDecimal("200.00")));
+        assertThat(buyer.getList("topProductsByQuantity", Document.class))
+                .extracting(stat -> stat.getString("productId"), stat -> stat.getInteger("totalQuantity"))
+                .containsExactly(tuple("p1", 4),
+                        tuple("p3", 3),
+                        tuple("p2", 2));
+        // Orders naming a seller with no user document write nothing for it
+        assertThat(batched.productStats()).noneMatch(stat -> "ghost".equals(stat.getString("userId")));
+    }
+
+    @Test
+    void batch_replayedIsNotAppliedTwice() {
+        List<OrderPlacedEvent> events = orders();
+        Fixture fixture = fixture(4);
+        fixture.consumer.handleOrderPlacedBatch(events);
+        List<Document> users = fixture.users();
+        List<Document> stats = fixture.productStats();
+
+        fixture.consumer.handleOrderPlacedBatch(events);
+
+        assertThat(fixture.users()).isEqualTo(users);
+        assertThat(fixture.productStats()).isEqualTo(stats);
+    }
+
+    @Test
+    void ledgerRejectionRollsBackTransactionAndSkipsOnlyTheRecordedUser() {
+        Fixture fixture = fixture(1);
+        // Recorded by another node, so this node's Bloom filter has never seen it
+        fixture.mongoTemplate.insert(new ProcessedOrder(ProcessedOrder.key("o1", "buyer-1"), "o1", "buyer-1", Instant.now()));
+
+        fixture.consumer.handleOrderPlacedBatch(List.of(
+                event("o1", "buyer-1", "seller-1", item("p1", "10.00", 2))));
+
+        assertThat(fixture.user("buyer-1").get("totalSpent")).isEqualTo(new Decimal128(BigDecimal.ZERO));
+        assertThat(fixture.user("seller-1").get("totalRevenue")).isEqualTo(new Decimal128(new BigDecimal("20.00")));
+        assertThat(fixture.productStats()).extracting(stat -> stat.getString("userId")).containsExactly("seller-1");
+    }
+
+    @Test
+    void migrations_convertStringTotalsAndRebuildTopProductsFromMigratedRows() {
+        Fixture fixture = fixture(1);
+        fixture.mongoTemplate.getCollection("users").insertOne(new Document("_id", "legacy")
+                .append("name", "Legacy Buyer")
+                .append("totalSpent", "12.50")
+                .append("totalRevenue", "0")
+                .append("productStats", List.of(new Document("productId", "p9")
+                        .append("productName", "Old")
+                        .append("totalQuantity", 5)
+                        .append("totalAmount", "12.50")))
+                // Built by the consumer before the migration ran, without the legacy product
+                .append("topProductsByQuantity", List.of(new Document("productId", "p1")
+                        .append("productName", "Phone")
+                        .append("totalQuantity", 1)
+                        .append("totalAmount", new Decimal128(new BigDecimal("10.00"))))));
+
+        assertThat(new UserTotalsMigrationService(fixture.mongoTemplate).migrate()).isEqualTo(2);
+        assertThat(new ProductStatsMigrationService(fixture.mongoTemplate, fixture.transactionTemplate).migrate()).isEqualTo(1);
+        fixture.consumer.handleOrderPlacedBatch(List.of(event("o1", "legacy", "seller-1", item("p1", "10.00", 1))));
+
+        Document legacy = fixture.user("legacy");
+        assertThat(legacy.get("totalSpent")).isEqualTo(new Decimal128(new BigDecimal("22.50")));
+        assertThat(legacy).doesNotContainKey("productStats");
+        assertThat(legacy.getList("topProductsByQuantity", Document.class))
+                .extracting(stat -> stat.getString("productId"))
+                .containsExactly("p9", "p1");
+    }
+
+    private List<OrderPlacedEvent> orders() {
+        return List.of(
+                event("o1", "buyer-1", "seller-1", item("p1", "10.00", 2), item("p2", "50.00", 1)),
+                event("o2", "buyer-2", "seller-1", item("p1", "10.00", 1)),
+                event("o3", "buyer-1", "seller-2", item("p3", "20.00", 3), item("p2", "50.00", 1)),
+                event("o4", "buyer-1", "seller-1", item("p1", "10.00", 2)),
+                event("o5", "buyer-2", "ghost", item("p4", "0.00", 1)),
+                // Delivered twice in the same batch
+                event("o2", "buyer-2", "seller-1", item("p1", "10.00", 1)));
+    }
+
+    private OrderPlacedEvent event(String orderId, String userId, String sellerId, OrderItemEvent... items) {
+        OrderPlacedEvent event = new OrderPlacedEvent();
+        event.setOrderId(orderId);
+        event.setUserId(userId);
+        event.setSellerId(sellerId);
+        event.setItems(List.of(items));
+        BigDecimal total = BigDecimal.ZERO;
+        for (OrderItemEvent item : items) {
+            total = total.add(item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
+        event.setTotalAmount(total);
+        return event;
+    }
+
+    private OrderItemEvent item(String productId, String price, int quantity) {
+        return new OrderItemEvent(productId, "Product " + productId, new BigDecimal(price), quantity);
+    }
+
+    /** The consumer and everything below it, wired by hand on a fresh database with the app's decimal128 mapping. */
+    private Fixture fixture(int parallelism) {
+        SimpleMongoClientDatabaseFactory databaseFactory =
+                new SimpleMongoClientDatabaseFactory(client, "stats-" + UUID.randomUUID());
+
+        MongoCustomConversions conversions = MongoCustomConversions.create(
+                adapter -> adapter.bigDecimal(MongoCustomConversions.BigDecimalRepresentation.DECIMAL128));
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.setInitialEntitySet(Set.of(User.class, UserProductStat.class, ProcessedOrder.class));
+        // Indexes are created here, outside the transactions, for the entities registered up front
+        mappingContext.setAutoIndexCreation(true);
+        mappingContext.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(new DefaultDbRefResolver(databaseFactory), mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        MongoTemplate mongoTemplate = new MongoTemplate(databaseFactory, converter);
+        for (String collection : List.of("users", "user_product_stats", "processed_orders")) {
+            if (!mongoTemplate.collectionExists(collection)) {
+                mongoTemplate.createCollection(collection);
+            }
+        }
+
+        MongoRepositoryFactory repositoryFactory = new MongoRepositoryFactory(mongoTemplate);
+        UserRepository userRepository = repositoryFactory.getRepository(UserRepository.class,
+                RepositoryFragments.just(new UserRepositoryCustomImpl(mongoTemplate)));
+        UserProductStatRepository userProductStatRepository = repositoryFactory.getRepository(UserProductStatRepository.class,
+                RepositoryFragments.just(new UserProductStatRepositoryCustomImpl(mongoTemplate)));
+
+        TopProductsService topProductsService = new TopProductsService(userRepository, userProductStatRepository);
+        ReflectionTestUtils.setField(topProductsService, "size", 10);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new MongoTransactionManager(databaseFactory));
+        OrderEventConsumer consumer = new OrderEventConsumer(userRepository, userProductStatRepository, topProductsService,
+                new ProcessedOrderLedger(mongoTemplate, 1_000, 0.01), transactionTemplate, null, null);
+        ReflectionTestUtils.setField(consumer, "parallelism", parallelism);
+        ReflectionTestUtils.setField(consumer, "minUsersPerLane", 1);
+
+        for (String id : List.of("buyer-1", "buyer-2", "seller-1", "seller-2")) {
+            User user = new User();
+            user.setId(id);
+            user.setName(id);
+            user.setEmail(id + "@example.com");
+            mongoTemplate.insert(user);
+        }
+
+        Fixture fixture = new Fixture(mongoTemplate, transactionTemplate, consumer);
+        fixtures.add(fixture);
+        return fixture;
+    }
+
+    private record Fixture(MongoTemplate mongoTemplate, TransactionTemplate transactionTemplate,
+                         OrderEventConsumer consumer) {
+
+        List<Document> users() {
+            return mongoTemplate.find(new Query().with(Sort.by("_id")), Document.class, "users");
+        }
+
+        Document user(String id) {
+            return mongoTemplate.findById(id, Document.class, "users");
+        }
+
+        /** Rows without their generated _id, which differs between databases. */
+        List<Document> productStats() {
+            List<Document> stats = mongoTemplate.find(new Query().with(Sort.by("userId", "productId")),
+                    Document.class, "user_product_stats");
+            stats.forEach(stat -> stat.remove("_id"));
+            return stats;
+        }
+
+        List<String> processedKeys() {
+            return mongoTemplate.find(new Query().with(Sort.by("_id")), ProcessedOrder.class).stream()
+                    .map(ProcessedOrder::getId)
+                    .toList();
+        }
+    }
+}
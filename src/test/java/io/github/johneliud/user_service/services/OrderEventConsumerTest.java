@@ -0,0 +1,319 @@
+package io.github.johneliud.user_service.services;
+
+import com.mongodb.MongoException;
+import io.github.johneliud.user_service.dto.OrderItemEvent;
+import io.github.johneliud.user_service.dto.OrderPlacedEvent;
+import io.github.johneliud.user_service.models.ProductStat;
+import io.github.johneliud.user_service.models.UserStatsDelta;
+import io.github.johneliud.user_service.repositories.UserProductStatRepository;
+import io.github.johneliud.user_service.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.UncategorizedMongoDbException;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class OrderEventConsumerTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserProductStatRepository userProductStatRepository;
+
+    @Mock
+    private TopProductsService topProductsService;
+
+    @Mock
+    private ProcessedOrderLedger processedOrderLedger;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private OrderEventRecoveryService orderEventRecoveryService;
+
+    @Mock
+    private ObjectMapper objectMapper;
+
+    @InjectMocks
+    private OrderEventConsumer orderEventConsumer;
+
+    @Captor
+    private ArgumentCaptor<Collection<UserStatsDelta>> deltasCaptor;
+
+    @BeforeEach
+    void runTransactionCallbacksInline() {
+        lenient().doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    private OrderPlacedEvent event(String orderId, String userId, String sellerId, OrderItemEvent... items) {
+        OrderPlacedEvent event = new OrderPlacedEvent();
+        event.setOrderId(orderId);
+        event.setUserId(userId);
+        event.setSellerId(sellerId);
+        event.setItems(List.of(items));
+        BigDecimal total = BigDecimal.ZERO;
+        for (OrderItemEvent item : items) {
+            total = total.add(item.getPrice().multiply(BigDecimal.valueOf(item.getQuantity())));
+        }
+        event.setTotalAmount(total);
+        return event;
+    }
+
+    private List<UserStatsDelta> capturedDeltas() {
+        verify(userRepository).incrementTotals(deltasCaptor.capture());
+        verify(userProductStatRepository).incrementStats(deltasCaptor.getValue());
+        verify(topProductsService).refresh(deltasCaptor.getValue());
+        verify(processedOrderLedger).record(deltasCaptor.getValue());
+        verify(processedOrderLedger).remember(deltasCaptor.getValue());
+        return new ArrayList<>(deltasCaptor.getValue());
+    }
+
+    @Test
+    void handleOrderPlacedBatch_foldsEventsPerUser() {
+        OrderItemEvent phone = new OrderItemEvent("p1", "Phone", new BigDecimal("10.00"), 2);
+        OrderItemEvent laptop = new OrderItemEvent("p2", "Laptop", new BigDecimal("100.00"), 1);
+
+        orderEventConsumer.handleOrderPlacedBatch(List.of(
+                event("o1", "b1", "s1", phone),
+                event("o2", "b1", "s1", phone, laptop),
+                event("o3", "b2", "s1", laptop)));
+
+        List<UserStatsDelta> deltas = capturedDeltas();
+        assertThat(deltas).extracting(UserStatsDelta::getUserId).containsExactly("b1", "s1", "b2");
+
+        UserStatsDelta buyer = deltas.get(0);
+        assertThat(buyer.getSpent()).isEqualByComparingTo("140.00");
+        assertThat(buyer.getRevenue()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(buyer.getProductStats().values()).extracting(ProductStat::getProductId, ProductStat::getTotalQuantity)
+                .containsExactly(tuple("p1", 4), tuple("p2", 1));
+
+        UserStatsDelta seller = deltas.get(1);
+        assertThat(seller.getRevenue()).isEqualByComparingTo("240.00");
+        assertThat(seller.getSpent()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(seller.getProductStats().values()).extracting(ProductStat::getProductId, ProductStat::getTotalAmount)
+                .containsExactly(tuple("p1", new BigDecimal("40.00")),
+                        tuple("p2", new BigDecimal("200.00")));
+    }
+
+    @Test
+    void handleOrderPlacedBatch_skipsMalformedEvents() {
+        OrderPlacedEvent malformed = event("o1", "b1", "s1",
+                new OrderItemEvent("p1", "Phone", new BigDecimal("10.00"), 1));
+        malformed.setSellerId(null);
+
+        orderEventConsumer.handleOrderPlacedBatch(List.of(malformed));
+
+        verify(userRepository, never()).incrementTotals(any());
+        verify(userProductStatRepository, never()).incrementStats(any());
+    }
+
+    @Test
+    void handleOrderPlaced_sameUserAsBuyerAndSeller_mergesIntoOneDelta() {
+        orderEventConsumer.handleOrderPlaced(event("o1", "u1", "u1",
+                new OrderItemEvent("p1", "Phone", new BigDecimal("10.00"), 3)));
+
+        List<UserStatsDelta> deltas = capturedDeltas();
+        assertThat(deltas).hasSize(1);
+        assertThat(deltas.get(0).getSpent()).isEqualByComparingTo("30.00");
+        assertThat(deltas.get(0).getRevenue()).isEqualByComparingTo("30.00");
+        assertThat(deltas.get(0).getProductStats().values()).singleElement()
+                .extracting(ProductStat::getTotalQuantity).isEqualTo(6);
+    }
+
+    @Test
+    void handleOrderPlacedBatch_alreadyProcessedSide_isNotAppliedAgain() {
+        when(processedOrderLedger.findProcessed(anyCollection(), eq(true))).thenReturn(Set.of("o1:b1"));
+
+        orderEventConsumer.handleOrderPlacedBatch(List.of(event("o1", "b1", "s1",
+                new OrderItemEvent("p1", "Phone", new BigDecimal("10.00"), 1))));
+
+        List<UserStatsDelta> deltas = capturedDeltas();
+        assertThat(deltas).extracting(UserStatsDelta::getUserId).containsExactly("s1");
+        assertThat(deltas.get(0).getOrderIds()).containsExactly("o1");
+    }
+
+    @Test
+    void handleOrderPlacedBatch_fullyProcessedBatch_skipsTransaction() {
+        when(processedOrderLedger.findProcessed(anyCollection(), eq(true))).thenReturn(Set.of("o1:b1", "o1:s1"));
+
+        orderEventConsumer.handleOrderPlacedBatch(List.of(event("o1", "b1", "s1",
+                new OrderItemEvent("p1", "Phone", new BigDecimal("10.00"), 1))));
+
+        verify(transactionTemplate, never()).executeWithoutResult(any());
+    }
+
+    @Test
+    void handleOrderPlacedBatch_duplicateOrderInBatch_appliedOnce() {
+        OrderItemEvent phone = new OrderItemEvent("p1", "Phone", new BigDecimal("10.00"), 1);
+
+        orderEventConsumer.handleOrderPlacedBatch(List.of(event("o1", "b1", "s1", phone), event("o1", "b1", "s1", phone)));
+
+        List<UserStatsDelta> deltas = capturedDeltas();
+        assertThat(deltas.get(0).getSpent()).isEqualByComparingTo("10.00");
+    }
+
+    @Test
+    void handleOrderPlacedBatch_ledgerConflict_retriesWithFullLedgerLookup() {
+        when(processedOrderLedger.findProcessed(anyCollection(), eq(false))).thenReturn(Set.of("o1:b1", "o1:s1"));
+        doThrow(new DuplicateKeyException("duplicate")).doNothing().when(processedOrderLedger).record(anyCollection());
+
+        orderEventConsumer.handleOrderPlacedBatch(List.of(event("o1", "b1", "s1",
+                new OrderItemEvent("p1", "Phone", new BigDecimal("10.00"), 1))));
+
+        verify(processedOrderLedger).findProcessed(anyCollection(), eq(false));
+        verify(transactionTemplate, times(1)).executeWithoutResult(any());
+        verify(processedOrderLedger, never()).remember(anyCollection());
+    }
+
+    @Test
+    void handleOrderPlacedMessages_undecodablePayload_isParkedWithRawBytes() {
+        RecordHeaders headers = new RecordHeaders();
+        SerializationUtils.deserializationException(headers, "not-json".getBytes(StandardCharsets.UTF_8),
+                new SerializationException("bad json"), false);
+        ConsumerRecord<String, OrderPlacedEvent> record = new ConsumerRecord<>("order-placed", 0, 0L,
+                ConsumerRecord.NO_TIMESTAMP, TimestampType.NO_TIMESTAMP_TYPE, 0, 0, "k", null, headers, Optional.empty());
+
+        orderEventConsumer.handleOrderPlacedMessages(List.of(record));
+
+        verify(orderEventRecoveryService).park("k", "not-json", "bad json", "order-placed");
+        verify(userRepository, never()).incrementTotals(any());
+    }
+
+    @Test
+    void handleOrderPlacedMessages_nullValue_isParked() {
+        ConsumerRecord<String, OrderPlacedEvent> record = new ConsumerRecord<>("order-placed", 0, 0L, "k", null);
+
+        orderEventConsumer.handleOrderPlacedMessages(List.of(record));
+
+        verify(orderEventRecoveryService).park("k", null, "Empty order-placed payload", "order-placed");
+        verify(userRepository, never()).incrementTotals(any());
+    }
+
+    @Test
+    void handleOrderPlacedMessages_transientFailure_forwardsBatchForRetry() {
+        OrderPlacedEvent parsed = event("o1", "b1", "s1", new OrderItemEvent("p1", "Phone", new BigDecimal("10.00"), 1));
+        ConsumerRecord<String, OrderPlacedEvent> record = new ConsumerRecord<>("order-placed", 0, 0L, "k", parsed);
+        doThrow(new DataAccessResourceFailureException("mongo down")).when(userRepository).incrementTotals(any());
+
+        orderEventConsumer.handleOrderPlacedMessages(List.of(record));
+
+        verify(orderEventRecoveryService).forwardForRetry(List.of(record));
+        verify(processedOrderLedger, never()).remember(anyCollection());
+    }
+
+    @Test
+    void handleOrderPlacedMessages_forwardFailure_propagatesToErrorHandler() {
+        OrderPlacedEvent parsed = event("o1", "b1", "s1", new OrderItemEvent("p1", "Phone", new BigDecimal("10.00"), 1));
+        ConsumerRecord<String, OrderPlacedEvent> record = new ConsumerRecord<>("order-placed", 0, 0L, "k", parsed);
+        doThrow(new DataAccessResourceFailureException("mongo down")).when(userRepository).incrementTotals(any());
+        doThrow(new KafkaException("broker down")).when(orderEventRecoveryService).forwardForRetry(any());
+
+        assertThatThrownBy(() -> orderEventConsumer.handleOrderPlacedMessages(List.of(record)))
+                .isInstanceOf(KafkaException.class);
+    }
+
+    @Test
+    void handleOrderPlacedRetry_invalidEvent_failsWithoutRetry() {
+        OrderPlacedEvent invalid = new OrderPlacedEvent();
+        invalid.setOrderId("o1");
+        when(objectMapper.readValue("{}", OrderPlacedEvent.class)).thenReturn(invalid);
+
+        assertThatThrownBy(() -> orderEventConsumer.handleOrderPlacedRetry("{}"))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(transactionTemplate, never()).executeWithoutResult(any());
+    }
+
+    @Test
+    void handleOrderPlacedBatch_transientWriteConflict_isRetriedInPlace() {
+        MongoException conflict = new MongoException(112, "WriteConflict");
+        conflict.addLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+        doThrow(new UncategorizedMongoDbException("Write conflict", conflict))
+                .doNothing()
+                .when(userRepository).incrementTotals(any());
+
+        orderEventConsumer.handleOrderPlacedBatch(List.of(
+                event("o1", "b1", "s1", new OrderItemEvent("p1", "Phone", new BigDecimal("10.00"), 1))));
+
+        verify(transactionTemplate, times(2)).executeWithoutResult(any());
+        verify(processedOrderLedger).remember(anyCollection());
+    }
+
+    @Test
+    void handleOrderPlacedBatch_persistentWriteConflict_givesUpAfterMaxAttempts() {
+        ReflectionTestUtils.setField(orderEventConsumer, "transactionAttempts", 3);
+        MongoException conflict = new MongoException(112, "WriteConflict");
+        conflict.addLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+        doThrow(new UncategorizedMongoDbException("Write conflict", conflict)).when(userRepository).incrementTotals(any());
+
+        assertThatThrownBy(() -> orderEventConsumer.handleOrderPlacedBatch(List.of(
+                event("o1", "b1", "s1", new OrderItemEvent("p1", "Phone", new BigDecimal("10.00"), 1)))))
+                .isInstanceOf(UncategorizedMongoDbException.class);
+        verify(transactionTemplate, times(3)).executeWithoutResult(any());
+        verify(processedOrderLedger, never()).remember(anyCollection());
+    }
+
+    @Test
+    void handleOrderPlacedBatch_parallelLanes_writeEveryUserExactlyOnce() {
+        ReflectionTestUtils.setField(orderEventConsumer, "parallelism", 4);
+        ReflectionTestUtils.setField(orderEventConsumer, "minUsersPerLane", 1);
+        OrderItemEvent phone = new OrderItemEvent("p1", "Phone", new BigDecimal("10.00"), 1);
+
+        List<OrderPlacedEvent> events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            events.add(event("o" + i, "b" + i, "s" + (i % 3), phone));
+        }
+        orderEventConsumer.handleOrderPlacedBatch(events);
+
+        verify(userRepository, atLeast(2)).incrementTotals(deltasCaptor.capture());
+        List<String> userIds = deltasCaptor.getAllValues().stream()
+                .flatMap(Collection::stream)
+                .map(UserStatsDelta::getUserId)
+                .toList();
+        assertThat(userIds).hasSize(23).doesNotHaveDuplicates();
+    }
+}
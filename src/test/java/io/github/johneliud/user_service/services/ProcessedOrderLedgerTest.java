@@ -0,0 +1,83 @@
+package io.github.johneliud.user_service.services;
+
+import io.github.johneliud.user_service.models.ProcessedOrder;
+import io.github.johneliud.user_service.models.UserStatsDelta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ProcessedOrderLedgerTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private ProcessedOrderLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        ledger = new ProcessedOrderLedger(mongoTemplate, 1_000, 0.01);
+    }
+
+    @Test
+    void rebuildFilter_forgetsKeysThatExpiredFromTheLedger() {
+        ledger.remember(List.of(delta("o1", "u1")));
+        when(mongoTemplate.stream(any(Query.class), eq(ProcessedOrder.class)))
+                .thenReturn(Stream.of(entry("o2", "u2")));
+
+        ledger.rebuildFilter();
+
+        assertThat(ledger.findProcessed(List.of("o1:u1"), true)).isEmpty();
+        verify(mongoTemplate, never()).find(any(Query.class), eq(ProcessedOrder.class));
+    }
+
+    @Test
+    void rebuildFilter_keepsKeysStillInTheLedger() {
+        when(mongoTemplate.stream(any(Query.class), eq(ProcessedOrder.class)))
+                .thenReturn(Stream.of(entry("o2", "u2")));
+        when(mongoTemplate.find(any(Query.class), eq(ProcessedOrder.class))).thenReturn(List.of(entry("o2", "u2")));
+
+        ledger.rebuildFilter();
+
+        assertThat(ledger.findProcessed(List.of("o2:u2"), true)).containsExactly("o2:u2");
+    }
+
+    @Test
+    void rebuildFilter_keepsKeysRememberedWhileRebuilding() {
+        // The order commits after the rebuild's scan has passed it, so only remember() can add it
+        when(mongoTemplate.stream(any(Query.class), eq(ProcessedOrder.class))).thenAnswer(invocation -> {
+            ledger.remember(List.of(delta("o3", "u3")));
+            return Stream.of(entry("o2", "u2"));
+        });
+        when(mongoTemplate.find(any(Query.class), eq(ProcessedOrder.class))).thenReturn(List.of(entry("o3", "u3")));
+
+        ledger.rebuildFilter();
+
+        assertThat(ledger.findProcessed(List.of("o3:u3"), true)).containsExactly("o3:u3");
+    }
+
+    private UserStatsDelta delta(String orderId, String userId) {
+        UserStatsDelta delta = new UserStatsDelta(userId);
+        delta.getOrderIds().add(orderId);
+        return delta;
+    }
+
+    private ProcessedOrder entry(String orderId, String userId) {
+        return new ProcessedOrder(ProcessedOrder.key(orderId, userId), orderId, userId, Instant.now());
+    }
+}
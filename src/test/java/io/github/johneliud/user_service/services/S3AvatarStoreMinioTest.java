@@ -0,0 +1,189 @@
+package io.github.johneliud.user_service.services;
+
+import io.github.johneliud.user_service.models.AvatarBlob;
+import io.github.johneliud.user_service.repositories.AvatarBlobRepository;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.minio.MinIOContainer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs {@link S3AvatarStore} against a real MinIO server, so request signing, path-style
+ * addressing and the error codes MinIO returns are covered, not just the calls the mocks expect.
+ * Skipped when Docker is not available.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@ExtendWith(MockitoExtension.class)
+class S3AvatarStoreMinioTest {
+    private static final String BUCKET = "avatars";
+    private static final String REGION = "us-east-1";
+
+    @Container
+    private static final MinIOContainer MINIO = new MinIOContainer("minio/minio:RELEASE.2023-09-04T19-57-37Z");
+
+    private static S3Client s3;
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private AvatarBlobRepository avatarBlobRepository;
+
+    private String prefix;
+    private S3AvatarStore store;
+
+    @BeforeAll
+    static void createBucket() {
+        s3 = S3Client.builder()
+                .region(Region.of(REGION))
+                .endpointOverride(URI.create(MINIO.getS3URL()))
+                .forcePathStyle(true)
+                .credentialsProvider(StaticCredentialsProvider.create(
+                        AwsBasicCredentials.create(MINIO.getUserName(), MINIO.getPassword())))
+                .build();
+        s3.createBucket(request -> request.bucket(BUCKET));
+    }
+
+    @AfterAll
+    static void closeClient() {
+        s3.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        // A prefix per test keeps the shared bucket's objects apart
+        prefix = "test-" + UUID.randomUUID() + "/";
+        store = new S3AvatarStore(BUCKET, prefix, REGION, MINIO.getS3URL(), true,
+                MINIO.getUserName(), MINIO.getPassword());
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.shutdown();
+    }
+
+    @Test
+    void stat_returnsEmptyForMissingObject() throws IOException {
+        assertThat(store.stat("missing.png")).isEmpty();
+    }
+
+    @Test
+    void put_storesObjectReadableThroughStat() throws IOException {
+        byte[] content = {1, 2, 3, 4};
+        Path source = Files.write(tempDir.resolve("upload.tmp"), content);
+
+        store.put("a.png", source);
+
+        AvatarStore.StoredObject object = store.stat("a.png").orElseThrow();
+        assertThat(object.size()).isEqualTo(4);
+        assertThat(object.localPath()).isNull();
+        try (InputStream in = object.resource().getInputStream()) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+        assertThat(s3.headObject(HeadObjectRequest.builder().bucket(BUCKET).key(prefix + "a.png").build())
+                .contentType()).isEqualTo("image/png");
+        assertThat(source).doesNotExist();
+    }
+
+    @Test
+    void move_copiesThenDeletesSource() throws IOException {
+        store.put("a.png", Files.write(tempDir.resolve("upload.tmp"), new byte[]{5, 6}));
+
+        assertThat(store.move("a.png", "trash/a.png.1")).isTrue();
+
+        assertThat(store.stat("a.png")).isEmpty();
+        assertThat(store.stat("trash/a.png.1").orElseThrow().size()).isEqualTo(2);
+        assertThat(store.move("a.png", "trash/a.png.2")).isFalse();
+    }
+
+    @Test
+    void sweepUnreferencedBlobs_removesBlobAndThumbnails() throws IOException {
+        FileStorageService fileStorageService = fileStorageService();
+        String filename = fileStorageService.storeAvatar(
+                new MockMultipartFile("avatar", "me.png", "image/png", encodedPng(200, 200)));
+        fileStorageService.shutdown();
+        assertThat(fileStorageService.findAvatar(filename, 64).orElseThrow().filename()).endsWith("-64.jpg");
+        when(avatarBlobRepository.findUnreferencedBefore(any(), anyInt()))
+                .thenReturn(List.of(new AvatarBlob(filename, 0, 0, Instant.EPOCH)));
+        when(avatarBlobRepository.deleteIfUnreferenced(eq(filename), any())).thenReturn(true);
+
+        fileStorageService.sweepUnreferencedBlobs();
+
+        assertThat(storedKeys()).isEmpty();
+    }
+
+    @Test
+    void sweepUnreferencedBlobs_restoresBlobReferencedMeanwhile() throws IOException {
+        FileStorageService fileStorageService = fileStorageService();
+        byte[] content = encodedPng(200, 200);
+        String filename = fileStorageService.storeAvatar(new MockMultipartFile("avatar", "me.png", "image/png", content));
+        fileStorageService.shutdown();
+        when(avatarBlobRepository.findUnreferencedBefore(any(), anyInt()))
+                .thenReturn(List.of(new AvatarBlob(filename, 0, 0, Instant.EPOCH)));
+        when(avatarBlobRepository.deleteIfUnreferenced(eq(filename), any())).thenReturn(false);
+
+        fileStorageService.sweepUnreferencedBlobs();
+
+        try (InputStream in = store.stat(filename).orElseThrow().resource().getInputStream()) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+        assertThat(storedKeys()).noneMatch(key -> key.startsWith("trash/"));
+    }
+
+    private FileStorageService fileStorageService() {
+        LegacyAvatarFiles legacyFiles = new LegacyAvatarFiles(tempDir.toString());
+        return new FileStorageService(avatarBlobRepository, store, legacyFiles,
+                new AvatarMigrator(store, legacyFiles, false), tempDir.toString(), Duration.ofMinutes(10),
+                List.of(64), Executors.newSingleThreadExecutor());
+    }
+
+    private List<String> storedKeys() {
+        return s3.listObjectsV2Paginator(ListObjectsV2Request.builder().bucket(BUCKET).prefix(prefix).build())
+                .contents().stream()
+                .map(S3Object::key)
+                .map(key -> key.substring(prefix.length()))
+                .toList();
+    }
+
+    private byte[] encodedPng(int width, int height) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB), "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.johneliud.user_service.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CopyObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class S3AvatarStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private S3Client s3;
+
+    private S3AvatarStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new S3AvatarStore(s3, "bucket", "avatars/");
+    }
+
+    @Test
+    void stat_returnsMetadataWithoutLocalPath() throws IOException {
+        Instant modified = Instant.parse("2026-01-01T00:00:00Z");
+        when(s3.headObject(HeadObjectRequest.builder().bucket("bucket").key("avatars/a.png").build()))
+                .thenReturn(HeadObjectResponse.builder().contentLength(42L).lastModified(modified).build());
+
+        AvatarStore.StoredObject object = store.stat("a.png").orElseThrow();
+
+        assertThat(object.size()).isEqualTo(42);
+        assertThat(object.lastModified()).isEqualTo(modified);
+        assertThat(object.localPath()).isNull();
+        assertThat(object.resource().contentLength()).isEqualTo(42);
+    }
+
+    @Test
+    void stat_returnsEmptyForMissingObject() throws IOException {
+        when(s3.headObject(any(HeadObjectRequest.class))).thenThrow(s3Error(404));
+
+        assertThat(store.stat("a.png")).isEmpty();
+    }
+
+    @Test
+    void stat_wrapsOtherErrors() {
+        when(s3.headObject(any(HeadObjectRequest.class))).thenThrow(s3Error(503));
+
+        assertThatThrownBy(() -> store.stat("a.png")).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void put_uploadsUnderPrefixAndConsumesSource() throws IOException {
+        Path source = Files.write(tempDir.resolve("upload.tmp"), new byte[]{1, 2, 3});
+
+        store.put("thumbnails/a-64.jpg", source);
+
+        ArgumentCaptor<PutObjectRequest> request = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3).putObject(request.capture(), any(RequestBody.class));
+        assertThat(request.getValue().key()).isEqualTo("avatars/thumbnails/a-64.jpg");
+        assertThat(request.getValue().contentType()).isEqualTo("image/jpeg");
+        assertThat(source).doesNotExist();
+    }
+
+    @Test
+    void move_copiesThenDeletesSource() throws IOException {
+        assertThat(store.move("a.png", "trash/a.png.1")).isTrue();
+
+        ArgumentCaptor<CopyObjectRequest> copy = ArgumentCaptor.forClass(CopyObjectRequest.class);
+        verify(s3).copyObject(copy.capture());
+        assertThat(copy.getValue().sourceKey()).isEqualTo("avatars/a.png");
+        assertThat(copy.getValue().destinationKey()).isEqualTo("avatars/trash/a.png.1");
+        verify(s3).deleteObject(DeleteObjectRequest.builder().bucket("bucket").key("avatars/a.png").build());
+    }
+
+    @Test
+    void move_returnsFalseWhenSourceIsMissing() throws IOException {
+        when(s3.copyObject(any(CopyObjectRequest.class))).thenThrow(s3Error(404));
+
+        assertThat(store.move("a.png", "trash/a.png.1")).isFalse();
+        verify(s3, never()).deleteObject(any(DeleteObjectRequest.class));
+    }
+
+    private static S3Exception s3Error(int status) {
+        return (S3Exception) S3Exception.builder().statusCode(status).build();
+    }
+}
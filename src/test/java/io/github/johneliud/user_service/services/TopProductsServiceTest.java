@@ -0,0 +1,64 @@
+package io.github.johneliud.user_service.services;
+
+import io.github.johneliud.user_service.models.ProductStatSort;
+import io.github.johneliud.user_service.models.UserProductStat;
+import io.github.johneliud.user_service.models.UserStatsDelta;
+import io.github.johneliud.user_service.repositories.UserProductStatRepository;
+import io.github.johneliud.user_service.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TopProductsServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserProductStatRepository userProductStatRepository;
+
+    @InjectMocks
+    private TopProductsService topProductsService;
+
+    @Test
+    void refresh_updatesBuyerQuantityListForZeroPricedOrder() {
+        UserStatsDelta buyer = new UserStatsDelta("buyer");
+        buyer.setBuyer(true);
+        buyer.addProduct("p1", "Freebie", 2, BigDecimal.ZERO);
+        List<UserStatsDelta> deltas = List.of(buyer);
+        when(userProductStatRepository.findUpdatedStats(deltas))
+                .thenReturn(List.of(new UserProductStat(null, "buyer", "p1", "Freebie", 2, BigDecimal.ZERO)));
+
+        topProductsService.refresh(deltas);
+
+        verify(userRepository).mergeTopProducts(anyMap(), eq(ProductStatSort.QUANTITY), anyInt());
+        verify(userRepository, never()).mergeTopProducts(anyMap(), eq(ProductStatSort.AMOUNT), anyInt());
+    }
+
+    @Test
+    void refresh_updatesSellerAmountListOnly() {
+        UserStatsDelta seller = new UserStatsDelta("seller");
+        seller.setSeller(true);
+        seller.setRevenue(new BigDecimal("10.00"));
+        List<UserStatsDelta> deltas = List.of(seller);
+        when(userProductStatRepository.findUpdatedStats(deltas)).thenReturn(List.of());
+
+        topProductsService.refresh(deltas);
+
+        verify(userRepository).mergeTopProducts(anyMap(), eq(ProductStatSort.AMOUNT), anyInt());
+        verify(userRepository, never()).mergeTopProducts(anyMap(), eq(ProductStatSort.QUANTITY), anyInt());
+    }
+}
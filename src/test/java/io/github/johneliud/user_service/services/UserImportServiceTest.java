@@ -0,0 +1,165 @@
+package io.github.johneliud.user_service.services;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.github.johneliud.user_service.dto.ImportRowResult;
+import io.github.johneliud.user_service.models.User;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserImportServiceTest {
+
+    private static final String VALID_PASSWORD = "Password123!";
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private PasswordEncoder passwordEncoder;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    @Captor
+    private ArgumentCaptor<List<User>> usersCaptor;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+    private UserImportService userImportService;
+
+    @BeforeEach
+    void setUp() {
+        userImportService = new UserImportService(mongoTemplate, passwordEncoder, validator, objectMapper, 2, 2, 256);
+    }
+
+    @AfterEach
+    void tearDown() {
+        userImportService.shutdown();
+    }
+
+    @Test
+    void importUsers_ndjson_insertsValidRowsInBatchesAndReportsEveryRow() throws Exception {
+        when(passwordEncoder.encode(anyString())).thenReturn("hashed");
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class)).thenReturn(bulkOperations);
+        when(bulkOperations.insert(anyList())).thenReturn(bulkOperations);
+
+        String body = row("Jane", "jane@example.com") + "\n"
+                + "not json\n"
+                + "\n"
+                + row("Jo", "not-an-email") + "\n"
+                + row("John", "john@example.com") + "\n"
+                + row("Ann", "ann@example.com") + "\n";
+
+        List<ImportRowResult> results = run(body, UserImportService.Format.NDJSON);
+
+        assertThat(results).extracting(ImportRowResult::getLine, ImportRowResult::getStatus).containsExactly(
+                tuple(2L, ImportRowResult.Status.INVALID),
+                tuple(4L, ImportRowResult.Status.INVALID),
+                tuple(1L, ImportRowResult.Status.CREATED),
+                tuple(5L, ImportRowResult.Status.CREATED),
+                tuple(6L, ImportRowResult.Status.CREATED));
+        verify(bulkOperations, times(2)).insert(usersCaptor.capture());
+        assertThat(usersCaptor.getAllValues()).extracting(List::size).containsExactly(2, 1);
+        assertThat(usersCaptor.getAllValues().getFirst()).allSatisfy(user -> {
+            assertThat(user.getId()).isNotNull();
+            assertThat(user.getPassword()).isEqualTo("hashed");
+        });
+    }
+
+    @Test
+    void importUsers_csv_reportsDuplicateKeyErrorsPerRow() throws Exception {
+        when(passwordEncoder.encode(anyString())).thenReturn("hashed");
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class)).thenReturn(bulkOperations);
+        when(bulkOperations.insert(anyList())).thenReturn(bulkOperations);
+        BulkWriteError duplicate = new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 1);
+        when(bulkOperations.execute()).thenThrow(new BulkOperationException("E11000", new MongoBulkWriteException(
+                BulkWriteResult.unacknowledged(), List.of(duplicate), null, new ServerAddress(), Set.of())));
+
+        String body = "email,name,password,role\n"
+                + "jane@example.com,\"Seller, Jane\"," + VALID_PASSWORD + ",seller\n"
+                + "john@example.com,John," + VALID_PASSWORD + ",CLIENT\n";
+
+        List<ImportRowResult> results = run(body, UserImportService.Format.CSV);
+
+        assertThat(results).extracting(ImportRowResult::getLine, ImportRowResult::getStatus, ImportRowResult::getError)
+                .containsExactly(
+                        tuple(2L, ImportRowResult.Status.CREATED, null),
+                        tuple(3L, ImportRowResult.Status.DUPLICATE, "Email already registered"));
+        verify(bulkOperations).insert(usersCaptor.capture());
+        assertThat(usersCaptor.getValue().getFirst().getName()).isEqualTo("Seller, Jane");
+    }
+
+    @Test
+    void importUsers_rejectsAdminRows() throws Exception {
+        String body = "name,email,password,role\n"
+                + "Root,root@example.com," + VALID_PASSWORD + ",ADMIN\n";
+
+        List<ImportRowResult> results = run(body, UserImportService.Format.CSV);
+
+        assertThat(results).extracting(ImportRowResult::getStatus, ImportRowResult::getError)
+                .containsExactly(tuple(ImportRowResult.Status.INVALID, "Admin accounts cannot be imported"));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void importUsers_reportsOverlongLinesAndKeepsReading() throws Exception {
+        String body = "{\"name\":\"" + "x".repeat(1000) + "\"}\n" + "null\n" + "[]\n";
+
+        List<ImportRowResult> results = run(body, UserImportService.Format.NDJSON);
+
+        assertThat(results).extracting(ImportRowResult::getLine, ImportRowResult::getStatus)
+                .containsExactly(
+                        tuple(1L, ImportRowResult.Status.INVALID),
+                        tuple(2L, ImportRowResult.Status.INVALID),
+                        tuple(3L, ImportRowResult.Status.INVALID));
+        assertThat(results.get(0).getError()).isEqualTo("Row exceeds 256 characters");
+        assertThat(results.get(1).getError()).isEqualTo("Row must be a JSON object");
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    private List<ImportRowResult> run(String body, UserImportService.Format format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        userImportService.importUsers(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), format, out);
+        return out.toString(StandardCharsets.UTF_8).lines()
+                .map(line -> objectMapper.readValue(line, ImportRowResult.class))
+                .toList();
+    }
+
+    private String row(String name, String email) {
+        return "{\"name\":\"" + name + "\",\"email\":\"" + email + "\",\"password\":\"" + VALID_PASSWORD
+                + "\",\"role\":\"SELLER\"}";
+    }
+}
@@ -0,0 +1,202 @@
+package io.github.johneliud.user_service.services;
+
+import io.github.johneliud.user_service.dto.UserResponse;
+import io.github.johneliud.user_service.exception.ServiceUnavailableException;
+import io.github.johneliud.user_service.models.Role;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserProfileCacheTest {
+
+    private final LocalProfileInvalidationBus bus = new LocalProfileInvalidationBus();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UserProfileCache nodeA = new UserProfileCache(bus, meterRegistry, Duration.ofMinutes(10), 100, Duration.ofSeconds(5));
+    private final UserProfileCache nodeB = new UserProfileCache(bus, new SimpleMeterRegistry(), Duration.ofMinutes(10), 100, Duration.ofSeconds(5));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void get_loadsOnceThenServesFromCache() {
+        nodeA.get("123", loader("John"));
+        UserResponse cached = nodeA.get("123", loader("Jane"));
+
+        assertThat(cached.getName()).isEqualTo("John");
+        assertThat(loads).hasValue(1);
+        assertThat(meterRegistry.get("cache.gets").tag("cache", "user.profiles").tag("result", "hit")
+                .functionCounter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void invalidate_evictsOnEveryNodeSubscribedToTheBus() {
+        nodeA.get("123", loader("John"));
+        nodeB.get("123", loader("John"));
+
+        nodeA.invalidate("123");
+
+        assertThat(nodeA.get("123", loader("Jane")).getName()).isEqualTo("Jane");
+        assertThat(nodeB.get("123", loader("Jane")).getName()).isEqualTo("Jane");
+    }
+
+    @Test
+    void get_failedLoadIsNotCached() {
+        assertThatThrownBy(() -> nodeA.get("404", id -> {
+            throw new IllegalArgumentException("User not found");
+        })).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(nodeA.get("404", loader("Late")).getName()).isEqualTo("Late");
+    }
+
+    private Function<String, UserResponse> loader(String name) {
+        return id -> {
+            loads.incrementAndGet();
+            return new UserResponse(id, name, "john@example.com", Role.CLIENT, null);
+        };
+    }
+
+    @Test
+    void get_concurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Function<String, UserResponse> slowLoader = id -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return new UserResponse(id, "John", "john@example.com", Role.SELLER, null);
+        };
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<UserResponse> owner = executor.submit(() -> nodeA.get("123", slowLoader));
+            loading.await(5, TimeUnit.SECONDS);
+            List<Future<UserResponse>> waiters = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                waiters.add(executor.submit(() -> nodeA.get("123", slowLoader)));
+            }
+            release.countDown();
+
+            assertThat(owner.get(5, TimeUnit.SECONDS).getName()).isEqualTo("John");
+            for (Future<UserResponse> waiter : waiters) {
+                assertThat(waiter.get(5, TimeUnit.SECONDS).getName()).isEqualTo("John");
+            }
+        }
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void get_waiterTimesOutWhileLoadIsStuck() throws Exception {
+        UserProfileCache cache = new UserProfileCache(bus, new SimpleMeterRegistry(),
+                Duration.ofMinutes(10), 100, Duration.ofMillis(50));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            executor.submit(() -> cache.get("123", id -> {
+                loading.countDown();
+                await(release);
+                return new UserResponse(id, "John", "john@example.com", Role.SELLER, null);
+            }));
+            loading.await(5, TimeUnit.SECONDS);
+
+            assertThatThrownBy(() -> cache.get("123", loader("Other")))
+                    .isInstanceOf(ServiceUnavailableException.class);
+            release.countDown();
+        }
+        assertThat(loads).hasValue(0);
+    }
+
+    @Test
+    void getAll_idFailingInAnotherRequestIsLeftOutInsteadOfFailingTheBatch() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Set<? extends String>> batchLoads = new ArrayList<>();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<UserResponse> single = executor.submit(() -> nodeA.get("404", id -> {
+                loading.countDown();
+                await(release);
+                throw new IllegalArgumentException("User not found");
+            }));
+            loading.await(5, TimeUnit.SECONDS);
+
+            Map<String, UserResponse> found = nodeA.getAll(List.of("123", "404"), ids -> {
+                batchLoads.add(Set.copyOf(ids));
+                // Only now let the in-flight single lookup fail, after the batch has joined it
+                release.countDown();
+                return Map.of("123", new UserResponse("123", "John", "john@example.com", Role.CLIENT, null));
+            });
+
+            assertThat(found).containsOnlyKeys("123");
+            assertThat(batchLoads).containsExactly(Set.of("123"));
+            assertThatThrownBy(() -> single.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void get_joiningBatchThatMissedTheIdReportsUserNotFound() throws Exception {
+        CountDownLatch batchLoading = new CountDownLatch(1);
+        CountDownLatch singleJoined = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<Map<String, UserResponse>> batch = executor.submit(() -> nodeA.getAll(List.of("404"), ids -> {
+                batchLoading.countDown();
+                await(singleJoined);
+                sleep(100); // lets the single lookup join this in-flight future
+                return Map.of();
+            }));
+            batchLoading.await(5, TimeUnit.SECONDS);
+
+            Future<UserResponse> single = executor.submit(() -> {
+                singleJoined.countDown();
+                return nodeA.get("404", id -> {
+                    throw new IllegalArgumentException("User not found");
+                });
+            });
+
+            assertThat(batch.get(5, TimeUnit.SECONDS)).isEmpty();
+            assertThatThrownBy(() -> single.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(IllegalArgumentException.class)
+                    .cause().hasMessage("User not found");
+        }
+    }
+
+    @Test
+    void getAll_ownLoadFailureIsThrownAndNotCached() {
+        assertThatThrownBy(() -> nodeA.getAll(List.of("123"), ids -> {
+            throw new ServiceUnavailableException("Mongo down");
+        })).isInstanceOf(ServiceUnavailableException.class);
+
+        assertThat(nodeA.getAll(List.of("123"), ids -> Map.of("123",
+                new UserResponse("123", "John", "john@example.com", Role.CLIENT, null)))).containsOnlyKeys("123");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
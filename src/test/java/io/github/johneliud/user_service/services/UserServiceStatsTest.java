@@ -1,10 +1,15 @@
 package io.github.johneliud.user_service.services;
 
 import io.github.johneliud.user_service.dto.SellerStatsResponse;
+import io.github.johneliud.user_service.dto.StatsPageRequest;
 import io.github.johneliud.user_service.dto.UserStatsResponse;
 import io.github.johneliud.user_service.models.ProductStat;
+import io.github.johneliud.user_service.models.ProductStatSort;
 import io.github.johneliud.user_service.models.Role;
 import io.github.johneliud.user_service.models.User;
+import io.github.johneliud.user_service.models.UserProductStat;
+import io.github.johneliud.user_service.repositories.ProductStatCursor;
+import io.github.johneliud.user_service.repositories.UserProductStatRepository;
 import io.github.johneliud.user_service.repositories.UserRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -12,14 +17,19 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,11 +44,13 @@ class UserServiceStatsTest {
     @Mock
     private FileStorageService fileStorageService;
 
+    @Mock
+    private UserProductStatRepository userProductStatRepository;
+
     @InjectMocks
     private UserService userService;
 
-    private User userWithStats(String id, Role role, BigDecimal totalSpent, BigDecimal totalRevenue,
-                               List<ProductStat> stats) {
+    private User userWithTotals(String id, Role role, BigDecimal totalSpent, BigDecimal totalRevenue) {
         User user = new User();
         user.setId(id);
         user.setName("Test User");
@@ -47,21 +59,23 @@ class UserServiceStatsTest {
         user.setRole(role);
         user.setTotalSpent(totalSpent);
         user.setTotalRevenue(totalRevenue);
-        user.setProductStats(new ArrayList<>(stats));
         return user;
     }
 
+    private UserProductStat stat(String userId, String productId, String name, int qty, String amount) {
+        return new UserProductStat(null, userId, productId, name, qty, new BigDecimal(amount));
+    }
+
     // ── getUserStats ─────────────────────────────────────────────────────────
 
     @Test
     void getUserStats_returnsTopProductsSortedByQty() {
-        ProductStat lowQty = new ProductStat("p1", "Phone", 3, new BigDecimal("30.00"));
-        ProductStat highQty = new ProductStat("p2", "Laptop", 5, new BigDecimal("50.00"));
-        User user = userWithStats("u1", Role.CLIENT, new BigDecimal("80.00"), BigDecimal.ZERO,
-                List.of(lowQty, highQty));
-        when(userRepository.findById("u1")).thenReturn(Optional.of(user));
+        User user = userWithTotals("u1", Role.CLIENT, new BigDecimal("80.00"), BigDecimal.ZERO);
+        when(userRepository.findStatsById("u1", "totalSpent", ProductStatSort.QUANTITY)).thenReturn(Optional.of(user));
+        when(userProductStatRepository.findTopStats("u1", ProductStatSort.QUANTITY, 0, 10))
+                .thenReturn(List.of(stat("u1", "p2", "Laptop", 5, "50.00"), stat("u1", "p1", "Phone", 3, "30.00")));
 
-        UserStatsResponse result = userService.getUserStats("u1");
+        UserStatsResponse result = userService.getUserStats("u1", new StatsPageRequest());
 
         assertThat(result.getTotalSpent()).isEqualByComparingTo("80.00");
         assertThat(result.getTopProducts()).hasSize(2);
@@ -71,10 +85,12 @@ class UserServiceStatsTest {
 
     @Test
     void getUserStats_noHistory_returnsZeroTotals() {
-        User user = userWithStats("u1", Role.CLIENT, BigDecimal.ZERO, BigDecimal.ZERO, List.of());
-        when(userRepository.findById("u1")).thenReturn(Optional.of(user));
+        User user = userWithTotals("u1", Role.CLIENT, BigDecimal.ZERO, BigDecimal.ZERO);
+        when(userRepository.findStatsById("u1", "totalSpent", ProductStatSort.QUANTITY)).thenReturn(Optional.of(user));
+        when(userProductStatRepository.findTopStats("u1", ProductStatSort.QUANTITY, 0, 10))
+                .thenReturn(List.of());
 
-        UserStatsResponse result = userService.getUserStats("u1");
+        UserStatsResponse result = userService.getUserStats("u1", new StatsPageRequest());
 
         assertThat(result.getTotalSpent()).isEqualByComparingTo(BigDecimal.ZERO);
         assertThat(result.getTopProducts()).isEmpty();
@@ -82,24 +98,77 @@ class UserServiceStatsTest {
 
     @Test
     void getUserStats_userNotFound_throws() {
-        when(userRepository.findById("unknown")).thenReturn(Optional.empty());
+        when(userRepository.findStatsById("unknown", "totalSpent", ProductStatSort.QUANTITY)).thenReturn(Optional.empty());
 
-        assertThatThrownBy(() -> userService.getUserStats("unknown"))
+        assertThatThrownBy(() -> userService.getUserStats("unknown", new StatsPageRequest()))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("User not found");
     }
 
+    @Test
+    void getUserStats_firstPageWithinTopProducts_servedWithoutQuery() {
+        ReflectionTestUtils.setField(userService, "topProductsSize", 10);
+        User user = userWithTotals("u1", Role.CLIENT, new BigDecimal("80.00"), BigDecimal.ZERO);
+        user.setTopProductsByQuantity(List.of(
+                new ProductStat("p2", "Laptop", 5, new BigDecimal("50.00")),
+                new ProductStat("p1", "Phone", 3, new BigDecimal("30.00"))));
+        when(userRepository.findStatsById("u1", "totalSpent", ProductStatSort.QUANTITY)).thenReturn(Optional.of(user));
+
+        UserStatsResponse result = userService.getUserStats("u1", new StatsPageRequest());
+
+        assertThat(result.getTopProducts()).extracting(ProductStat::getProductId).containsExactly("p2", "p1");
+        assertThat(result.getNextCursor()).isNull();
+        verify(userProductStatRepository, never()).findTopStats(anyString(), eq(ProductStatSort.QUANTITY), anyInt(), anyInt());
+    }
+
+    @Test
+    void getUserStats_fullPage_returnsCursorForNextPage() {
+        User user = userWithTotals("u1", Role.CLIENT, new BigDecimal("80.00"), BigDecimal.ZERO);
+        StatsPageRequest page = new StatsPageRequest();
+        page.setLimit(1);
+        when(userRepository.findStatsById("u1", "totalSpent", ProductStatSort.QUANTITY)).thenReturn(Optional.of(user));
+        when(userProductStatRepository.findTopStats("u1", ProductStatSort.QUANTITY, 0, 1))
+                .thenReturn(List.of(stat("u1", "p2", "Laptop", 5, "50.00")));
+
+        UserStatsResponse first = userService.getUserStats("u1", page);
+
+        assertThat(first.getNextCursor()).isNotNull();
+        ProductStatCursor cursor = ProductStatCursor.decode(first.getNextCursor(), ProductStatSort.QUANTITY);
+        assertThat(cursor.value()).isEqualTo(5);
+        assertThat(cursor.productId()).isEqualTo("p2");
+
+        page.setCursor(first.getNextCursor());
+        when(userProductStatRepository.findTopStatsAfter(eq("u1"), eq(cursor), eq(1)))
+                .thenReturn(List.of());
+
+        UserStatsResponse second = userService.getUserStats("u1", page);
+
+        assertThat(second.getTopProducts()).isEmpty();
+        assertThat(second.getNextCursor()).isNull();
+    }
+
+    @Test
+    void getUserStats_cursorForOtherSort_throws() {
+        User user = userWithTotals("u1", Role.CLIENT, BigDecimal.ZERO, BigDecimal.ZERO);
+        StatsPageRequest page = new StatsPageRequest();
+        page.setCursor(new ProductStatCursor(ProductStatSort.AMOUNT, BigDecimal.TEN, "p1").encode());
+        when(userRepository.findStatsById("u1", "totalSpent", ProductStatSort.QUANTITY)).thenReturn(Optional.of(user));
+
+        assertThatThrownBy(() -> userService.getUserStats("u1", page))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Invalid cursor");
+    }
+
     // ── getSellerStats ───────────────────────────────────────────────────────
 
     @Test
     void getSellerStats_returnsTopProductsSortedByAmount() {
-        ProductStat lowRevenue = new ProductStat("p1", "Shirt", 4, new BigDecimal("40.00"));
-        ProductStat highRevenue = new ProductStat("p2", "Jacket", 2, new BigDecimal("200.00"));
-        User seller = userWithStats("s1", Role.SELLER, BigDecimal.ZERO, new BigDecimal("240.00"),
-                List.of(lowRevenue, highRevenue));
-        when(userRepository.findById("s1")).thenReturn(Optional.of(seller));
+        User seller = userWithTotals("s1", Role.SELLER, BigDecimal.ZERO, new BigDecimal("240.00"));
+        when(userRepository.findStatsById("s1", "totalRevenue", ProductStatSort.AMOUNT)).thenReturn(Optional.of(seller));
+        when(userProductStatRepository.findTopStats("s1", ProductStatSort.AMOUNT, 0, 10))
+                .thenReturn(List.of(stat("s1", "p2", "Jacket", 2, "200.00"), stat("s1", "p1", "Shirt", 4, "40.00")));
 
-        SellerStatsResponse result = userService.getSellerStats("s1");
+        SellerStatsResponse result = userService.getSellerStats("s1", new StatsPageRequest());
 
         assertThat(result.getTotalRevenue()).isEqualByComparingTo("240.00");
         assertThat(result.getTopProducts()).hasSize(2);
@@ -109,9 +178,9 @@ class UserServiceStatsTest {
 
     @Test
     void getSellerStats_userNotFound_throws() {
-        when(userRepository.findById("unknown")).thenReturn(Optional.empty());
+        when(userRepository.findStatsById("unknown", "totalRevenue", ProductStatSort.AMOUNT)).thenReturn(Optional.empty());
 
-        assertThatThrownBy(() -> userService.getSellerStats("unknown"))
+        assertThatThrownBy(() -> userService.getSellerStats("unknown", new StatsPageRequest()))
                 .isInstanceOf(IllegalArgumentException.class)
                 .hasMessage("User not found");
     }
@@ -1,16 +1,32 @@
 package io.github.johneliud.user_service.services;
 
+import io.github.johneliud.user_service.dto.BatchUsersResponse;
 import io.github.johneliud.user_service.dto.RegisterRequest;
+import io.github.johneliud.user_service.dto.UpdateProfileRequest;
 import io.github.johneliud.user_service.dto.UserResponse;
 import io.github.johneliud.user_service.models.Role;
 import io.github.johneliud.user_service.models.User;
 import io.github.johneliud.user_service.repositories.UserRepository;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -28,6 +44,9 @@ class UserServiceTest {
     @Mock
     private FileStorageService fileStorageService;
 
+    @Mock
+    private UserProfileCache userProfileCache;
+
     @InjectMocks
     private UserService userService;
 
@@ -39,7 +58,6 @@ class UserServiceTest {
         request.setPassword("Password123!");
         request.setRole(Role.CLIENT);
 
-        when(userRepository.existsByEmail(request.getEmail())).thenReturn(false);
         when(passwordEncoder.encode(request.getPassword())).thenReturn("hashedPassword");
         
         User savedUser = new User();
@@ -48,7 +66,7 @@ class UserServiceTest {
         savedUser.setEmail(request.getEmail());
         savedUser.setRole(request.getRole());
         
-        when(userRepository.save(any(User.class))).thenReturn(savedUser);
+        when(userRepository.insert(any(User.class))).thenReturn(savedUser);
 
         UserResponse response = userService.registerUser(request, null);
 
@@ -56,17 +74,183 @@ class UserServiceTest {
         assertEquals("John Doe", response.getName());
         assertEquals("john@example.com", response.getEmail());
         assertEquals(Role.CLIENT, response.getRole());
-        verify(userRepository).save(any(User.class));
+        verify(userRepository).insert(any(User.class));
+        verifyNoInteractions(fileStorageService);
     }
 
     @Test
     void registerUser_DuplicateEmail_ThrowsException() {
         RegisterRequest request = new RegisterRequest();
         request.setEmail("existing@example.com");
+        request.setPassword("Password123!");
+
+        when(passwordEncoder.encode(request.getPassword())).thenReturn("hashedPassword");
+        when(userRepository.insert(any(User.class))).thenThrow(new DuplicateKeyException("E11000 duplicate key"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> userService.registerUser(request, null));
+        assertEquals("Email already registered", e.getMessage());
+    }
+
+    @Test
+    void registerUser_AdminRole_IsRejected() {
+        RegisterRequest request = new RegisterRequest();
+        request.setEmail("root@example.com");
+        request.setPassword("Password123!");
+        request.setRole(Role.ADMIN);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> userService.registerUser(request, null));
+        assertEquals("Admin accounts cannot be registered", e.getMessage());
+        verifyNoInteractions(userRepository, passwordEncoder);
+    }
+
+    @Test
+    void registerUser_WithAvatar_CommitsStagedFileAfterInsert() {
+        RegisterRequest request = sellerRequest();
+        MultipartFile avatar = mock(MultipartFile.class);
+
+        when(avatar.isEmpty()).thenReturn(false);
+        FileStorageService.StagedAvatar staged = new FileStorageService.StagedAvatar("staged.png", Path.of("upload.tmp"), 10);
+        when(fileStorageService.stageAvatar(avatar)).thenReturn(staged);
+        when(passwordEncoder.encode(request.getPassword())).thenReturn("hashedPassword");
+        when(userRepository.insert(any(User.class))).thenAnswer(invocation -> {
+            User user = invocation.getArgument(0);
+            user.setId("123");
+            return user;
+        });
+
+        UserResponse response = userService.registerUser(request, avatar);
 
-        when(userRepository.existsByEmail(request.getEmail())).thenReturn(true);
+        assertEquals("staged.png", response.getAvatar());
+        InOrder inOrder = inOrder(userRepository, fileStorageService);
+        inOrder.verify(userRepository).insert(any(User.class));
+        inOrder.verify(fileStorageService).commitAvatar(staged);
+        verify(fileStorageService, never()).discardStagedAvatar(any());
+    }
+
+    @Test
+    void registerUser_DuplicateEmailWithAvatar_DiscardsStagedFile() {
+        RegisterRequest request = sellerRequest();
+        MultipartFile avatar = mock(MultipartFile.class);
 
-        assertThrows(IllegalArgumentException.class, () -> userService.registerUser(request, null));
+        when(avatar.isEmpty()).thenReturn(false);
+        FileStorageService.StagedAvatar staged = new FileStorageService.StagedAvatar("staged.png", Path.of("upload.tmp"), 10);
+        when(fileStorageService.stageAvatar(avatar)).thenReturn(staged);
+        when(passwordEncoder.encode(request.getPassword())).thenReturn("hashedPassword");
+        when(userRepository.insert(any(User.class))).thenThrow(new DuplicateKeyException("E11000 duplicate key"));
+
+        assertThrows(IllegalArgumentException.class, () -> userService.registerUser(request, avatar));
+        verify(fileStorageService).discardStagedAvatar(staged);
+        verify(fileStorageService, never()).commitAvatar(any());
+    }
+
+    @Test
+    void registerUser_EncodeFailureWaitsForStagingBeforeDiscarding() {
+        RegisterRequest request = sellerRequest();
+        MultipartFile avatar = mock(MultipartFile.class);
+        CountDownLatch encoding = new CountDownLatch(1);
+        AtomicBoolean stagingFinished = new AtomicBoolean();
+
+        when(avatar.isEmpty()).thenReturn(false);
+        FileStorageService.StagedAvatar staged = new FileStorageService.StagedAvatar("staged.png", Path.of("upload.tmp"), 10);
+        when(fileStorageService.stageAvatar(avatar)).thenAnswer(invocation -> {
+            encoding.await(5, TimeUnit.SECONDS);
+            Thread.sleep(50);
+            stagingFinished.set(true);
+            return staged;
+        });
+        when(passwordEncoder.encode(request.getPassword())).thenAnswer(invocation -> {
+            encoding.countDown();
+            throw new IllegalStateException("encoder failed");
+        });
+
+        assertThrows(IllegalStateException.class, () -> userService.registerUser(request, avatar));
+        assertTrue(stagingFinished.get());
+        verify(fileStorageService).discardStagedAvatar(staged);
+        verifyNoInteractions(userRepository);
+    }
+
+    private RegisterRequest sellerRequest() {
+        RegisterRequest request = new RegisterRequest();
+        request.setName("Jane Seller");
+        request.setEmail("jane@example.com");
+        request.setPassword("Password123!");
+        request.setRole(Role.SELLER);
+        return request;
+    }
+
+    @Test
+    void updateProfile_UpdatesNameWithoutSavingWholeDocument() {
+        UpdateProfileRequest request = new UpdateProfileRequest();
+        request.setName("Jane Doe");
+
+        User updated = new User();
+        updated.setId("123");
+        updated.setName("Jane Doe");
+        updated.setRole(Role.CLIENT);
+
+        when(userRepository.updateName("123", "Jane Doe")).thenReturn(Optional.of(updated));
+
+        UserResponse response = userService.updateProfile("123", request);
+
+        assertEquals("Jane Doe", response.getName());
         verify(userRepository, never()).save(any(User.class));
+        verify(userProfileCache).invalidate("123");
+    }
+
+    @Test
+    void updateAvatar_ReplacesAvatarAndReleasesPreviousFile() {
+        MultipartFile avatar = mock(MultipartFile.class);
+
+        User previous = new User();
+        previous.setId("123");
+        previous.setRole(Role.SELLER);
+        previous.setAvatar("old.png");
+
+        when(fileStorageService.storeAvatar(avatar)).thenReturn("new.png");
+        when(userRepository.replaceAvatar("123", "new.png")).thenReturn(Optional.of(previous));
+
+        UserResponse response = userService.updateAvatar("123", avatar);
+
+        assertEquals("new.png", response.getAvatar());
+        verify(fileStorageService).releaseAvatar("old.png");
+        verify(userRepository, never()).save(any(User.class));
+        verify(userProfileCache).invalidate("123");
+    }
+
+    @Test
+    void updateAvatar_UserNotFound_ReleasesStoredFile() {
+        MultipartFile avatar = mock(MultipartFile.class);
+
+        when(fileStorageService.storeAvatar(avatar)).thenReturn("new.png");
+        when(userRepository.replaceAvatar("unknown", "new.png")).thenReturn(Optional.empty());
+
+        assertThrows(IllegalArgumentException.class, () -> userService.updateAvatar("unknown", avatar));
+        verify(fileStorageService).releaseAvatar("new.png");
+        verify(userProfileCache, never()).invalidate(any());
+    }
+
+    @Test
+    void getProfiles_LoadsMissesInOneQueryAndReportsMissingIds() {
+        UserResponse cached = new UserResponse("1", "Cached", "c@example.com", Role.SELLER, null);
+        User loaded = new User();
+        loaded.setId("2");
+        loaded.setName("Loaded");
+        loaded.setRole(Role.CLIENT);
+
+        when(userProfileCache.getAll(any(), any())).thenAnswer(invocation -> {
+            Function<Set<? extends String>, Map<String, UserResponse>> loader = invocation.getArgument(1);
+            Map<String, UserResponse> result = new HashMap<>(loader.apply(Set.of("2", "3")));
+            result.put("1", cached);
+            return result;
+        });
+        when(userRepository.findProfilesByIdIn(any())).thenReturn(List.of(loaded));
+
+        BatchUsersResponse response = userService.getProfiles(List.of("3", "1", "2", "1"));
+
+        assertEquals(List.of("1", "2"), response.getUsers().stream().map(UserResponse::getId).toList());
+        assertEquals(List.of("3"), response.getMissing());
+        verify(userRepository, times(1)).findProfilesByIdIn(any());
     }
 }
@@ -0,0 +1,49 @@
+package io.github.johneliud.user_service.services;
+
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserTotalsMigrationServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @InjectMocks
+    private UserTotalsMigrationService userTotalsMigrationService;
+
+    @Test
+    void migrate_convertsStringTotalsWithToDecimalPipeline() {
+        when(mongoTemplate.updateMulti(any(Query.class), any(AggregationUpdate.class), eq("users")))
+                .thenReturn(UpdateResult.acknowledged(2, 2L, null), UpdateResult.acknowledged(1, 1L, null));
+
+        long converted = userTotalsMigrationService.migrate();
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<AggregationUpdate> updates = ArgumentCaptor.forClass(AggregationUpdate.class);
+        verify(mongoTemplate, times(2)).updateMulti(queries.capture(), updates.capture(), eq("users"));
+        assertThat(converted).isEqualTo(3);
+        assertThat(queries.getAllValues()).extracting(Query::getQueryObject).containsExactly(
+                new Document("totalSpent", new Document("$type", 2)),
+                new Document("totalRevenue", new Document("$type", 2)));
+        assertThat(updates.getAllValues().getFirst().toPipeline(Aggregation.DEFAULT_CONTEXT)).containsExactly(
+                new Document("$set", new Document("totalSpent", new Document("$toDecimal", "$totalSpent"))));
+    }
+}